@@ -0,0 +1,91 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registers the metrics of one output under a common prefix and removes them again when the output stops.
+ * Several outputs can be attached to the same stream, so each instance appends the smallest number not
+ * taken by another running instance with the same prefix. A single output on a stream keeps
+ * {@code <prefix>.0} across restarts.
+ */
+public class OutputMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutputMetrics.class);
+
+    private static final Set<String> CLAIMED = ConcurrentHashMap.newKeySet();
+
+    private final MetricRegistry registry;
+    private final int instance;
+    private final String prefix;
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+    public OutputMetrics(MetricRegistry registry, String prefix) {
+        this.registry = registry;
+        int n = 0;
+        while (!CLAIMED.add(MetricRegistry.name(prefix, String.valueOf(n)))) {
+            n++;
+        }
+        this.instance = n;
+        this.prefix = MetricRegistry.name(prefix, String.valueOf(n));
+    }
+
+    /**
+     * The number that tells this instance apart from other outputs with the same prefix.
+     */
+    public int getInstance() {
+        return instance;
+    }
+
+    public Counter counter(String name) {
+        final String fullName = MetricRegistry.name(prefix, name);
+        names.add(fullName);
+        return registry.counter(fullName);
+    }
+
+    public <T extends Metric> T register(String name, T metric) {
+        final String fullName = MetricRegistry.name(prefix, name);
+        try {
+            registry.register(fullName, metric);
+            names.add(fullName);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Metric {} is already registered.", fullName);
+        }
+        return metric;
+    }
+
+    public <T> Gauge<T> gauge(String name, Gauge<T> gauge) {
+        return register(name, gauge);
+    }
+
+    public void close() {
+        for (String name : names) {
+            registry.remove(name);
+        }
+        names.clear();
+        CLAIMED.remove(prefix);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output;
+
+import com.google.common.base.Splitter;
+import org.graylog2.plugin.Message;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorts messages into priority lanes, 0 being the most urgent.
+ *
+ * Classes are configured as {@code billing,payment;login}: classes are separated by semicolons and
+ * listed from the most urgent, each with the values that belong to it. Messages are classified by the
+ * value of the configured field, or, without a field, all messages of the output by its flow name.
+ * Everything that matches no class goes to the lowest lane after the configured classes.
+ */
+public class PriorityClassifier {
+
+    private static final Splitter CLASS_SPLITTER = Splitter.on(';').trimResults();
+    private static final Splitter VALUE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final String field;
+    private final Map<String, Integer> priorities = new HashMap<>();
+    private final int levels;
+    private final int fixed;
+
+    /**
+     * @param field   field to classify by, or {@code null} to classify by the flow
+     * @param classes the configured classes, or {@code null} for a single lane
+     * @param flow    flow name of the output, may be {@code null}
+     */
+    public PriorityClassifier(String field, String classes, String flow) {
+        int level = 0;
+        if (classes != null) {
+            for (String priorityClass : CLASS_SPLITTER.split(classes)) {
+                final List<String> values = VALUE_SPLITTER.splitToList(priorityClass);
+                if (values.isEmpty()) {
+                    continue;
+                }
+                for (String value : values) {
+                    if (!priorities.containsKey(value)) {
+                        priorities.put(value, level);
+                    }
+                }
+                level++;
+            }
+        }
+        this.levels = level + 1;
+        this.field = field;
+
+        final Integer flowPriority = field == null && flow != null ? priorities.get(flow) : null;
+        this.fixed = field != null ? -1 : flowPriority != null ? flowPriority : level;
+    }
+
+    public int levels() {
+        return levels;
+    }
+
+    public int priorityOf(Message message) {
+        if (fixed >= 0) {
+            return fixed;
+        }
+        final Object value = message.getField(field);
+        final Integer priority = value == null ? null : priorities.get(value.toString());
+        return priority == null ? levels - 1 : priority;
+    }
+
+    /**
+     * Weights for the lanes' scheduler from a list like {@code 4,1} for the lanes below the top one,
+     * which always has strict priority. Missing weights halve from lane to lane, the lowest lane getting 1.
+     */
+    public int[] weights(String configured) {
+        final int[] weights = new int[levels];
+        weights[0] = 1;
+        final List<String> values = configured == null ? null : VALUE_SPLITTER.splitToList(configured);
+        for (int i = 1; i < levels; i++) {
+            int weight = 1 << Math.min(levels - 1 - i, 16);
+            if (values != null && i - 1 < values.size()) {
+                try {
+                    weight = Math.max(1, Integer.parseInt(values.get(i - 1)));
+                } catch (NumberFormatException e) {
+                    // keep the default
+                }
+            }
+            weights[i] = weight;
+        }
+        return weights;
+    }
+}
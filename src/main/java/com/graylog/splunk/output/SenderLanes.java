@@ -0,0 +1,132 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.graylog.splunk.output.senders.Sender;
+import com.graylog.splunk.output.senders.SenderState;
+import org.graylog2.plugin.Message;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the messages of one output over several senders, each with its own queue and channel.
+ *
+ * The lane of a message is picked by hashing the value of the configured key field, so all messages
+ * with the same key keep their order while different keys are sent in parallel.
+ */
+public class SenderLanes {
+
+    private final Sender[] lanes;
+    private final String keyField;
+    private final Counter[] submitted;
+
+    public SenderLanes(Sender[] lanes, String keyField, OutputMetrics metrics) {
+        this.lanes = lanes;
+        this.keyField = keyField;
+        this.submitted = new Counter[lanes.length];
+
+        metrics.gauge("lanes", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return SenderLanes.this.lanes.length;
+            }
+        });
+        for (int i = 0; i < lanes.length; i++) {
+            final Sender lane = lanes[i];
+            submitted[i] = metrics.counter("lane." + i + ".submitted");
+            metrics.gauge("lane." + i + ".queueDepth", new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return lane.getQueueDepth();
+                }
+            });
+        }
+        metrics.gauge("lanes.imbalance", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return imbalance();
+            }
+        });
+    }
+
+    public Sender select(Message message) {
+        final int lane = lanes.length == 1 ? 0 : laneOf(message.getField(keyField));
+        submitted[lane].inc();
+        return lanes[lane];
+    }
+
+    /**
+     * Lane for lines that do not come from a message, such as summaries.
+     */
+    public Sender defaultLane() {
+        return lanes[0];
+    }
+
+    private int laneOf(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        // murmur3 finalizer, spreads poor hash codes of small numbers and similar strings
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * Queue depth of the fullest lane relative to the average depth, {@code 1.0} when perfectly balanced.
+     */
+    private double imbalance() {
+        long total = 0;
+        int max = 0;
+        for (Sender lane : lanes) {
+            final int depth = lane.getQueueDepth();
+            total += depth;
+            max = Math.max(max, depth);
+        }
+        return total == 0 ? 1.0 : max / ((double) total / lanes.length);
+    }
+
+    public SenderState getState() {
+        SenderState state = lanes[0].getState();
+        for (int i = 1; i < lanes.length; i++) {
+            state = SenderState.combine(state, lanes[i].getState());
+        }
+        return state;
+    }
+
+    public void initialize() {
+        for (Sender lane : lanes) {
+            lane.initialize();
+        }
+    }
+
+    /**
+     * Stops the lanes one after the other, all within the given time.
+     */
+    public void stop(long timeout, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Sender lane : lanes) {
+            lane.stop(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -16,14 +16,48 @@
  */
 package com.graylog.splunk.output;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.graylog.splunk.output.diagnostics.DiagnosticLog;
+import com.graylog.splunk.output.diagnostics.OutputLatency;
+import com.graylog.splunk.output.encoders.CsvEncoder;
+import com.graylog.splunk.output.encoders.Encoder;
+import com.graylog.splunk.output.encoders.FieldProjection;
+import com.graylog.splunk.output.encoders.Framing;
+import com.graylog.splunk.output.encoders.JsonEncoder;
+import com.graylog.splunk.output.encoders.KeyValueEncoder;
+import com.graylog.splunk.output.encoders.LineEncoder;
+import com.graylog.splunk.output.encoders.ParallelEncoder;
+import com.graylog.splunk.output.encoders.SyslogHeader;
+import com.graylog.splunk.output.encoders.TlogEncoder;
+import com.graylog.splunk.output.senders.FileSinkKey;
+import com.graylog.splunk.output.senders.OversizePolicy;
 import com.graylog.splunk.output.senders.Sender;
-import com.graylog.splunk.output.senders.UDPSender_3;
+import com.graylog.splunk.output.senders.SenderMode;
+import com.graylog.splunk.output.senders.SenderState;
+import com.graylog.splunk.output.senders.SequencedSender;
+import com.graylog.splunk.output.senders.SharedTransports;
+import com.graylog.splunk.output.senders.SizeLimitedSender;
+import com.graylog.splunk.output.senders.SpillFile;
+import com.graylog.splunk.output.senders.StagingArea;
+import com.graylog.splunk.output.senders.StagingQuota;
+import com.graylog.splunk.output.senders.TimedPromise;
+import com.graylog.splunk.output.senders.TokenBucket;
+import com.graylog.splunk.output.senders.TransportKey;
+import com.graylog.splunk.output.stages.Aggregator;
+import com.graylog.splunk.output.stages.Deduplicator;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.BooleanField;
 import org.graylog2.plugin.configuration.fields.ConfigurationField;
 import org.graylog2.plugin.configuration.fields.DropdownField;
 import org.graylog2.plugin.configuration.fields.NumberField;
@@ -33,77 +67,535 @@ import org.graylog2.plugin.inputs.annotations.FactoryClass;
 import org.graylog2.plugin.outputs.MessageOutput;
 import org.graylog2.plugin.outputs.MessageOutputConfigurationException;
 import org.graylog2.plugin.streams.Stream;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Strings.emptyToNull;
 
 public class SplunkOutput implements MessageOutput {
 
     private static final Logger LOG = LoggerFactory.getLogger(SplunkOutput.class);
+    private static final DiagnosticLog.Category SEND_FAILED = DiagnosticLog.category("send.failed", 10, 1);
+    private static final DiagnosticLog.Category REJECTED = DiagnosticLog.category("rejected", 1, 1);
 
     private static final String CK_SPLUNK_HOST = "splunk_host";
     private static final String CK_SPLUNK_PORT = "splunk_port";
     private static final String CK_SPLUNK_PROTOCOL = "splunk_protocol";
     private static final String CK_SPLUNK_PARAMS = "splunk_params";
+    private static final String CK_SPLUNK_ENCODER = "splunk_encoder";
+    private static final String CK_FIELDS_INCLUDE = "fields_include";
+    private static final String CK_FIELDS_EXCLUDE = "fields_exclude";
+    private static final String CK_IN_FLIGHT_LIMIT = "in_flight_limit";
+    private static final String CK_STAGING_MEGABYTES = "staging_megabytes";
+    private static final String CK_FLUSH_TIMEOUT = "flush_timeout";
+    private static final String CK_SENDER_MODE = "sender_mode";
+    private static final String CK_PARALLEL_ENCODING_THRESHOLD = "parallel_encoding_threshold";
+    private static final String CK_SENDER_LANES = "sender_lanes";
+    private static final String CK_LANE_KEY_FIELD = "lane_key_field";
+    private static final String CK_SHARE_CONNECTIONS = "share_connections";
+    private static final String CK_PRIORITY_CLASSES = "priority_classes";
+    private static final String CK_PRIORITY_FIELD = "priority_field";
+    private static final String CK_PRIORITY_WEIGHTS = "priority_weights";
+    private static final String CK_UDP_PACKETS_PER_SECOND = "udp_packets_per_second";
+    private static final String CK_UDP_BYTES_PER_SECOND = "udp_bytes_per_second";
+    private static final String CK_UDP_BURST = "udp_burst";
+    private static final String CK_UDP_ADAPTIVE_PACING = "udp_adaptive_pacing";
+    private static final String CK_UDP_SEQUENCE_NUMBERS = "udp_sequence_numbers";
+    private static final String CK_UDP_MAX_DATAGRAM = "udp_max_datagram";
+    private static final String CK_UDP_OVERSIZE_POLICY = "udp_oversize_policy";
+    private static final String CK_TCP_FRAMING = "tcp_framing";
+    private static final String CK_TCP_SYSLOG_HEADER = "tcp_syslog_header";
+    private static final String CK_FILE_PATTERN = "file_pattern";
+    private static final String CK_FILE_ROLL_MEGABYTES = "file_roll_megabytes";
+    private static final String CK_FILE_SYNC_MS = "file_sync_ms";
+    private static final String CK_DEDUP_WINDOW = "dedup_window";
+    private static final String CK_DEDUP_CAPACITY = "dedup_capacity";
+    private static final String CK_DEDUP_FIELDS = "dedup_fields";
+    private static final String CK_AGGREGATE_WINDOW = "aggregate_window";
+    private static final String CK_AGGREGATE_GROUP_BY = "aggregate_group_by";
+    private static final String CK_AGGREGATE_FIELDS = "aggregate_fields";
+
+    private static final String ENCODER_SPLUNK = "splunk";
+    private static final String ENCODER_TLOG = "tlog";
+    private static final String ENCODER_JSON = "json";
+    private static final String ENCODER_CSV = "csv";
+
+    private static final int DEFAULT_IN_FLIGHT_LIMIT = 65536;
+    private static final int DEFAULT_STAGING_MEGABYTES = 64;
+    private static final int DEFAULT_FLUSH_TIMEOUT = 5000;
+    // Time the senders get after the flush timeout to spill or drop what is left and close.
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+    private static final int DEFAULT_UDP_BURST = 100;
+    private static final int DEFAULT_DEDUP_CAPACITY = 100000;
+    private static final String DEFAULT_FILE_PATTERN = "'tlog_'yyyyMMddHH'.log'";
+    private static final int DEFAULT_FILE_SYNC_MS = 1000;
+
+    private volatile boolean running = true;
 
-    private boolean running = true;
+    private final LineEncoder lineEncoder;
+    private final ParallelEncoder parallelEncoder;
+    private final int parallelEncodingThreshold;
+    private final SenderLanes lanes;
+    private final PriorityClassifier priorities;
+    private final Counter[] submittedByPriority;
+    private final Deduplicator deduplicator;
+    private final Aggregator aggregator;
+    private final ScheduledExecutorService windowTimer;
 
-    private final Sender sender;
+    private final int inFlightLimit;
+    private final Semaphore inFlight;
+    private final long flushTimeout;
+    private final FutureListener<Void> completionListener;
+
+    private final OutputMetrics metrics;
+    private final Counter delivered;
+    private final Counter failed;
+    private final Counter rejected;
+    private final Counter deduplicated;
+    private final Counter spilled;
+    private final Counter dropped;
+    private final OutputLatency latency;
 
     @Inject
-    public SplunkOutput(@Assisted Configuration configuration) throws MessageOutputConfigurationException {
+    public SplunkOutput(MetricRegistry metricRegistry,
+                        SharedTransports transports,
+                        @Assisted Stream stream,
+                        @Assisted Configuration configuration) throws MessageOutputConfigurationException {
         // Check configuration.
         if (!checkConfiguration(configuration)) {
             throw new MessageOutputConfigurationException("Missing configuration.");
         }
 
-        // Set up sender.
-//        sender = new TCPSender(
-//                configuration.getString(CK_SPLUNK_HOST),
-//                configuration.getInt(CK_SPLUNK_PORT)
-//        );
-//        sender = new UDPSender(
-//                configuration.getString(CK_SPLUNK_HOST),
-//                configuration.getInt(CK_SPLUNK_PORT),
-//                configuration.getString(CK_SPLUNK_PARAMS)
-//        );
-//        sender = new UDPSender_2(
-//                configuration.getString(CK_SPLUNK_HOST),
-//                configuration.getInt(CK_SPLUNK_PORT),
-//                configuration.getString(CK_SPLUNK_PARAMS)
-//        );
-        sender = new UDPSender_3(
-                configuration.getString(CK_SPLUNK_HOST),
-                configuration.getInt(CK_SPLUNK_PORT),
-                configuration.getString(CK_SPLUNK_PARAMS)
+        final FieldProjection projection = FieldProjection.of(
+                configuration.getString(CK_FIELDS_INCLUDE),
+                configuration.getString(CK_FIELDS_EXCLUDE)
         );
+
+        // Only a TCP stream needs framing, a datagram or a file line is delimited already.
+        final boolean tcp = "TCP".equals(configuration.getString(CK_SPLUNK_PROTOCOL));
+        final Framing framing = tcp ? parseFraming(configuration.getString(CK_TCP_FRAMING)) : Framing.LINE;
+        final SyslogHeader header = tcp && configuration.getBoolean(CK_TCP_SYSLOG_HEADER, false)
+                ? new SyslogHeader(emptyToNull(configuration.getString(CK_SPLUNK_PARAMS))) : null;
+        final Encoder encoder = createEncoder(configuration, projection, framing.keepsNewLines());
+        lineEncoder = new LineEncoder(encoder, framing, header);
+        parallelEncodingThreshold = Math.max(0, configuration.getInt(CK_PARALLEL_ENCODING_THRESHOLD, 0));
+        parallelEncoder = new ParallelEncoder(lineEncoder, parallelEncodingThreshold);
+
+        final int dedupWindow = configuration.getInt(CK_DEDUP_WINDOW, 0);
+        deduplicator = dedupWindow <= 0 ? null : new Deduplicator(
+                encoder,
+                FieldProjection.of(configuration.getString(CK_DEDUP_FIELDS), null).getFieldList(),
+                dedupWindow,
+                Math.max(1, configuration.getInt(CK_DEDUP_CAPACITY, DEFAULT_DEDUP_CAPACITY)));
+
+        final int aggregateWindow = configuration.getInt(CK_AGGREGATE_WINDOW, 0);
+        aggregator = aggregateWindow <= 0 ? null : new Aggregator(
+                encoder,
+                FieldProjection.of(configuration.getString(CK_AGGREGATE_GROUP_BY), null).getFieldList(),
+                FieldProjection.of(configuration.getString(CK_AGGREGATE_FIELDS), null).getFieldList(),
+                aggregateWindow);
+
+        inFlightLimit = Math.max(1, configuration.getInt(CK_IN_FLIGHT_LIMIT, DEFAULT_IN_FLIGHT_LIMIT));
+        inFlight = new Semaphore(inFlightLimit);
+        flushTimeout = Math.max(0, configuration.getInt(CK_FLUSH_TIMEOUT, DEFAULT_FLUSH_TIMEOUT));
+
+        final SenderMode senderMode = parseSenderMode(configuration.getString(CK_SENDER_MODE));
+
+        // Memory for queued lines is bounded by bytes, the in-flight limit only caps the number of lines.
+        final StagingQuota stagingQuota = StagingArea.shared().newQuota(
+                Math.max(1, configuration.getInt(CK_STAGING_MEGABYTES, DEFAULT_STAGING_MEGABYTES)) * 1024L * 1024L);
+
+        metrics = new OutputMetrics(metricRegistry, MetricRegistry.name(SplunkOutput.class, stream.getId()));
+
+        final OversizePolicy oversizePolicy = parseOversizePolicy(configuration.getString(CK_UDP_OVERSIZE_POLICY));
+        final Counter oversized = metrics.counter("oversized." + oversizePolicy.name().toLowerCase(Locale.ENGLISH));
+
+        // Set up senders, one per lane. Outputs with the same receiver and options share the transport of
+        // each lane, unless sharing is turned off; lines stay accounted against this output's quota.
+        final boolean file = "FILE".equals(configuration.getString(CK_SPLUNK_PROTOCOL));
+        priorities = new PriorityClassifier(
+                emptyToNull(configuration.getString(CK_PRIORITY_FIELD)),
+                emptyToNull(configuration.getString(CK_PRIORITY_CLASSES)),
+                emptyToNull(configuration.getString(CK_SPLUNK_PARAMS)));
+        final int[] priorityWeights = priorities.weights(configuration.getString(CK_PRIORITY_WEIGHTS));
+        // Octet-counted and line-framed events must not be mixed on one connection.
+        final String owner = !configuration.getBoolean(CK_SHARE_CONNECTIONS, true) ? UUID.randomUUID().toString()
+                : framing == Framing.LINE ? null : framing.name();
+        // Files have a single writer, lanes would only reorder lines.
+        final String filePattern = file ? parseFilePattern(configuration.getString(CK_FILE_PATTERN)) : null;
+        final Sender[] senders = new Sender[file ? 1 : Math.max(1, configuration.getInt(CK_SENDER_LANES, 1))];
+        final SharedTransports.Lease[] leases = new SharedTransports.Lease[senders.length];
+        for (int i = 0; i < senders.length; i++) {
+            if (file) {
+                leases[i] = transports.acquire(new FileSinkKey(configuration.getString(CK_SPLUNK_HOST), filePattern,
+                        Math.max(0, configuration.getInt(CK_FILE_ROLL_MEGABYTES, 0)) * 1024L * 1024L,
+                        Math.max(1, configuration.getInt(CK_FILE_SYNC_MS, DEFAULT_FILE_SYNC_MS)),
+                        inFlightLimit, priorityWeights), stagingQuota);
+                senders[i] = leases[i];
+                continue;
+            }
+            leases[i] = transports.acquire(new TransportKey(tcp,
+                    configuration.getString(CK_SPLUNK_HOST), configuration.getInt(CK_SPLUNK_PORT), i, inFlightLimit, senderMode,
+                    configuration.getInt(CK_UDP_PACKETS_PER_SECOND, 0),
+                    configuration.getInt(CK_UDP_BYTES_PER_SECOND, 0),
+                    configuration.getInt(CK_UDP_BURST, DEFAULT_UDP_BURST),
+                    configuration.getBoolean(CK_UDP_ADAPTIVE_PACING, false),
+                    priorityWeights, owner), stagingQuota);
+            senders[i] = leases[i];
+            if (!tcp) {
+                // Numbered after the size check, so dropped lines take no number and every fragment gets one.
+                final boolean sequenced = configuration.getBoolean(CK_UDP_SEQUENCE_NUMBERS, false);
+                if (sequenced) {
+                    senders[i] = new SequencedSender(senders[i]);
+                }
+                senders[i] = new SizeLimitedSender(senders[i],
+                        configuration.getInt(CK_UDP_MAX_DATAGRAM, SizeLimitedSender.MAX_UDP_PAYLOAD)
+                                - (sequenced ? SequencedSender.MAX_PREFIX_LENGTH : 0),
+                        oversizePolicy, oversized);
+            }
+        }
+
+        lanes = new SenderLanes(senders, firstNonNull(emptyToNull(configuration.getString(CK_LANE_KEY_FIELD)), Message.FIELD_SOURCE), metrics);
+        delivered = metrics.counter("delivered");
+        failed = metrics.counter("failed");
+        rejected = metrics.counter("rejected");
+        deduplicated = metrics.counter("deduplicated");
+        spilled = metrics.counter("spilled");
+        dropped = metrics.counter("dropped");
+        latency = new OutputLatency(stream.getTitle() + "#" + metrics.getInstance(), metrics, priorities.levels());
+        submittedByPriority = new Counter[priorities.levels()];
+        for (int p = 0; p < submittedByPriority.length; p++) {
+            final int priority = p;
+            submittedByPriority[p] = metrics.counter("priority." + p + ".submitted");
+            metrics.gauge("priority." + p + ".queueDepth", new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    int depth = 0;
+                    for (SharedTransports.Lease lease : leases) {
+                        depth += lease.getSharedQueueDepth(priority);
+                    }
+                    return depth;
+                }
+            });
+        }
+        metrics.gauge("staging.usedBytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return stagingQuota.getUsed();
+            }
+        });
+        metrics.gauge("staging.quotaBytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return stagingQuota.getCapacity();
+            }
+        });
+        metrics.gauge("staging.sharedUsedBytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return stagingQuota.getArea().getUsed();
+            }
+        });
+        metrics.gauge("inFlight", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return inFlightLimit - inFlight.availablePermits();
+            }
+        });
+        final SharedTransports.Lease transport = leases[0];
+        metrics.gauge("transport.sharedBy", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return transport.getSharedBy();
+            }
+        });
+        metrics.gauge("transport.sharedQueueDepth", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return transport.getSharedQueueDepth();
+            }
+        });
+        // One pacer per receiver, shared by all lanes and outputs, so the configured rate is what the receiver sees.
+        final TokenBucket pacer = transport.getPacer();
+        if (pacer != null && pacer.isLimited() && !tcp) {
+            metrics.gauge("pacer.waitMillis", new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return TimeUnit.NANOSECONDS.toMillis(pacer.getWaitNanos());
+                }
+            });
+            metrics.gauge("pacer.packetsPerSecond", new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    return pacer.getPacketsPerSecond();
+                }
+            });
+            metrics.gauge("pacer.bytesPerSecond", new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    return pacer.getBytesPerSecond();
+                }
+            });
+        }
+
+        completionListener = new FutureListener<Void>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                inFlight.release();
+                if (future.isSuccess()) {
+                    delivered.inc();
+                    if (future instanceof TimedPromise) {
+                        final TimedPromise timed = (TimedPromise) future;
+                        latency.recordSend(timed.getSubmittedNanos(), timed.getPriority());
+                    }
+                } else if (future.cause() == SpillFile.SPILLED) {
+                    spilled.inc();
+                } else if (future.cause() == SpillFile.DROPPED) {
+                    dropped.inc();
+                } else if (future.cause() instanceof RejectedExecutionException) {
+                    // queue or staging budget full
+                    rejected.inc();
+                } else {
+                    failed.inc();
+                    SEND_FAILED.record(String.valueOf(future.cause().getMessage()));
+                }
+            }
+        };
+        metrics.gauge("state", new Gauge<String>() {
+            @Override
+            public String getValue() {
+                return getState().name();
+            }
+        });
+
+        // Connect in the background, messages written in the meantime are queued.
+        lanes.initialize();
+
+        // Close windows on time even if no messages arrive.
+        if (aggregator != null || deduplicator != null) {
+            windowTimer = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("splunk-window", true));
+            final long interval = Math.min(
+                    aggregator == null ? Long.MAX_VALUE : aggregator.checkIntervalMillis(),
+                    deduplicator == null ? Long.MAX_VALUE : deduplicator.checkIntervalMillis());
+            windowTimer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    // An exception would cancel the schedule.
+                    try {
+                        if (aggregator != null) {
+                            submitGenerated(aggregator.rotateIfDue());
+                        }
+                        if (deduplicator != null) {
+                            submitGenerated(deduplicator.rotateIfDue());
+                        }
+                    } catch (RuntimeException e) {
+                        LOG.warn("Could not send rollups or dedup summaries.", e);
+                    }
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            windowTimer = null;
+        }
         running = true;
     }
 
+    /**
+     * Sends what is still queued or aggregated, waiting at most the flush timeout. Lines still queued after
+     * that are sent later if the connection is shared with other outputs, otherwise they are spilled to
+     * disk or dropped, see {@link SpillFile}. All steps share one deadline, so stopping takes at most the
+     * flush timeout plus {@value #CLOSE_TIMEOUT_MILLIS} ms for the senders to close.
+     */
     @Override
     public void stop() {
-        sender.stop();
+        final long flushDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushTimeout);
+        if (windowTimer != null) {
+            windowTimer.shutdownNow();
+            awaitTermination(windowTimer, flushDeadline);
+        }
+        if (aggregator != null) {
+            submitGenerated(aggregator.flush());
+        }
+        if (deduplicator != null) {
+            submitGenerated(deduplicator.flush());
+        }
+        if (flushTimeout > 0) {
+            awaitFlush(flushDeadline);
+        }
+        final long spilledBefore = spilled.getCount();
+        final long droppedBefore = dropped.getCount();
+        lanes.stop(remainingNanos(flushDeadline) + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS), TimeUnit.NANOSECONDS);
+        if (spilled.getCount() > spilledBefore || dropped.getCount() > droppedBefore) {
+            LOG.warn("Stopped with unsent lines: {} spilled to disk, {} dropped.",
+                    spilled.getCount() - spilledBefore, dropped.getCount() - droppedBefore);
+        }
+        metrics.close();
         running = false;
     }
 
+    /**
+     * Waits until all submitted messages have been written, at most until the deadline.
+     */
+    private void awaitFlush(long deadline) {
+        try {
+            if (inFlight.tryAcquire(inFlightLimit, remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                inFlight.release(inFlightLimit);
+            } else {
+                LOG.warn("Stopping with {} messages not yet written.", inFlightLimit - inFlight.availablePermits());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor, long deadline) {
+        try {
+            if (!executor.awaitTermination(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                LOG.warn("Window timer did not stop in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
     @Override
     public boolean isRunning() {
         return running;
     }
 
+    /**
+     * {@link SenderState#STARTING} until all lanes have connected once, {@link SenderState#DEGRADED} while
+     * one of them is reconnecting.
+     */
+    public SenderState getState() {
+        return running ? lanes.getState() : SenderState.STOPPED;
+    }
+
     @Override
     public void write(Message message) throws Exception {
-        if (message == null || message.getFields() == null || message.getFields().isEmpty()) {
+        if (isEmpty(message)) {
             return;
         }
+        final long start = System.nanoTime();
+        recordAge(message, start);
 
-        if(!sender.isInitialized()) {
-            sender.initialize();
+        if (aggregator != null) {
+            aggregator.add(message);
+            return;
         }
 
-        sender.send(message);
+        if (!inFlight.tryAcquire()) {
+            // Back-pressure: never park Graylog's output buffer processors on a slow receiver.
+            rejected.inc();
+            REJECTED.record("in-flight limit reached");
+            return;
+        }
+
+        final ByteBuf line;
+        try {
+            line = lineEncoder.encode(message);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        if (line == null) {
+            inFlight.release();
+            return;
+        }
+        if (isDuplicate(message, line)) {
+            inFlight.release();
+            return;
+        }
+
+        final int priority = priorities.priorityOf(message);
+        submittedByPriority[priority].inc();
+        lanes.select(message).submit(line, priority).addListener(completionListener);
+        latency.recordEnqueue(start);
+    }
+
+    /**
+     * Messages without a timestamp are still sent, they only have no age. {@link Message#getTimestamp()}
+     * would throw for them.
+     */
+    private void recordAge(Message message, long now) {
+        final Object timestamp = message.getField(Message.FIELD_TIMESTAMP);
+        if (timestamp instanceof DateTime) {
+            latency.recordAge(((DateTime) timestamp).getMillis(), now);
+        }
+    }
+
+    /**
+     * Drops the line if it is a repeat, and sends the summary of the previous dedup window when a new one starts.
+     */
+    private boolean isDuplicate(Message message, ByteBuf line) {
+        if (deduplicator == null) {
+            return false;
+        }
+
+        submitGenerated(deduplicator.rotateIfDue());
+
+        if (deduplicator.isDuplicate(message)) {
+            line.release();
+            deduplicated.inc();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends lines the output writes itself, such as summaries and rollups, on the default lane.
+     */
+    private void submitUnkeyed(ByteBuf line) {
+        if (!inFlight.tryAcquire()) {
+            line.release();
+            rejected.inc();
+            return;
+        }
+        lanes.defaultLane().submit(line).addListener(completionListener);
+    }
+
+    /**
+     * Encodes and sends the rollups of a closed window.
+     */
+    private void submitGenerated(List<Message> rollups) {
+        if (rollups == null) {
+            return;
+        }
+        for (Message rollup : rollups) {
+            submitGenerated(rollup);
+        }
+    }
+
+    /**
+     * Encodes and sends a message the output created itself, such as a dedup summary.
+     */
+    private void submitGenerated(Message message) {
+        if (message == null) {
+            return;
+        }
+        final ByteBuf line = lineEncoder.encode(message);
+        if (line != null) {
+            submitUnkeyed(line);
+        }
     }
 
     @Override
@@ -112,16 +604,137 @@ public class SplunkOutput implements MessageOutput {
             return;
         }
 
-        for(Message m : list) {
-            write(m);
+        if (aggregator != null || parallelEncodingThreshold <= 0 || list.size() < parallelEncodingThreshold) {
+            for(Message m : list) {
+                write(m);
+            }
+            return;
+        }
+
+        final List<Message> messages = withoutEmpty(list);
+        final long start = System.nanoTime();
+        for (Message message : messages) {
+            recordAge(message, start);
+        }
+
+        // Lines come back in the order of the batch, so they are queued in that order as well.
+        final ByteBuf[] lines = parallelEncoder.encode(messages);
+        for (int i = 0; i < lines.length; i++) {
+            final ByteBuf line = lines[i];
+            if (line == null || isDuplicate(messages.get(i), line)) {
+                continue;
+            }
+            if (!inFlight.tryAcquire()) {
+                line.release();
+                rejected.inc();
+                continue;
+            }
+            final int priority = priorities.priorityOf(messages.get(i));
+            submittedByPriority[priority].inc();
+            lanes.select(messages.get(i)).submit(line, priority).addListener(completionListener);
+            latency.recordEnqueue(start);
+        }
+    }
+
+    /**
+     * Messages without fields are skipped by both write paths.
+     */
+    private static boolean isEmpty(Message message) {
+        return message == null || message.getFields() == null || message.getFields().isEmpty();
+    }
+
+    /**
+     * The batch without the messages {@link #isEmpty(Message)} skips, the batch itself if it has none.
+     */
+    private static List<Message> withoutEmpty(List<Message> list) {
+        for (Message message : list) {
+            if (isEmpty(message)) {
+                final List<Message> messages = new ArrayList<>(list.size());
+                for (Message m : list) {
+                    if (!isEmpty(m)) {
+                        messages.add(m);
+                    }
+                }
+                return messages;
+            }
+        }
+        return list;
+    }
+
+    private static Encoder createEncoder(Configuration c, FieldProjection projection, boolean keepNewLines) throws MessageOutputConfigurationException {
+        final String encoder = firstNonNull(c.getString(CK_SPLUNK_ENCODER), ENCODER_TLOG);
+        switch (encoder) {
+            case ENCODER_SPLUNK:
+                return new KeyValueEncoder(projection, keepNewLines);
+            case ENCODER_TLOG:
+                if (!c.stringIsSet(CK_SPLUNK_PARAMS)) {
+                    throw new MessageOutputConfigurationException("Missing tlog flow name.");
+                }
+                try {
+                    return TlogEncoder.fromFormatFile(c.getString(CK_SPLUNK_PARAMS), keepNewLines);
+                } catch (IOException e) {
+                    throw new MessageOutputConfigurationException("Can't read tlog format file: " + e.getMessage());
+                }
+            case ENCODER_JSON:
+                return new JsonEncoder(projection);
+            case ENCODER_CSV:
+                return new CsvEncoder(projection, keepNewLines);
+            default:
+                throw new MessageOutputConfigurationException("Unknown encoder: " + encoder);
+        }
+    }
+
+    private static SenderMode parseSenderMode(String mode) throws MessageOutputConfigurationException {
+        if (mode == null) {
+            return SenderMode.PLATFORM_THREAD;
+        }
+        try {
+            return SenderMode.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            throw new MessageOutputConfigurationException("Unknown sender mode: " + mode);
+        }
+    }
+
+    private static Framing parseFraming(String framing) throws MessageOutputConfigurationException {
+        if (framing == null) {
+            return Framing.LINE;
+        }
+        try {
+            return Framing.valueOf(framing);
+        } catch (IllegalArgumentException e) {
+            throw new MessageOutputConfigurationException("Unknown TCP framing: " + framing);
+        }
+    }
+
+    private static OversizePolicy parseOversizePolicy(String policy) throws MessageOutputConfigurationException {
+        if (policy == null) {
+            return OversizePolicy.TRUNCATE;
+        }
+        try {
+            return OversizePolicy.valueOf(policy);
+        } catch (IllegalArgumentException e) {
+            throw new MessageOutputConfigurationException("Unknown oversize policy: " + policy);
+        }
+    }
+
+    private static String parseFilePattern(String pattern) throws MessageOutputConfigurationException {
+        if (emptyToNull(pattern) == null) {
+            return DEFAULT_FILE_PATTERN;
+        }
+        try {
+            new SimpleDateFormat(pattern);
+            return pattern;
+        } catch (IllegalArgumentException e) {
+            throw new MessageOutputConfigurationException("Invalid file name pattern " + pattern + ": " + e.getMessage());
         }
     }
 
     public boolean checkConfiguration(Configuration c) {
         return c.stringIsSet(CK_SPLUNK_HOST)
-                && c.intIsSet(CK_SPLUNK_PORT)
                 && c.stringIsSet(CK_SPLUNK_PROTOCOL)
-                && ("UDP".equals(c.getString(CK_SPLUNK_PROTOCOL)) || "TCP".equals(c.getString(CK_SPLUNK_PROTOCOL)));
+                && ("FILE".equals(c.getString(CK_SPLUNK_PROTOCOL))
+                    || (c.intIsSet(CK_SPLUNK_PORT)
+                        && ("UDP".equals(c.getString(CK_SPLUNK_PROTOCOL)) || "TCP".equals(c.getString(CK_SPLUNK_PROTOCOL)))));
     }
 
     @FactoryClass
@@ -144,7 +757,7 @@ public class SplunkOutput implements MessageOutput {
 
             configurationRequest.addField(new TextField(
                             CK_SPLUNK_HOST, "Splunk Host", "",
-                            "目标域名或IP",
+                            "目标域名或IP，FILE协议时为写入的目录",
                             ConfigurationField.Optional.NOT_OPTIONAL)
             );
 
@@ -154,17 +767,221 @@ public class SplunkOutput implements MessageOutput {
                             ConfigurationField.Optional.OPTIONAL)
             );
 
-            final Map<String, String> protocols = ImmutableMap.of("UDP", "UDP");
+            final Map<String, String> protocols = ImmutableMap.of("UDP", "UDP", "TCP", "TCP", "FILE", "FILE");
             configurationRequest.addField(new DropdownField(
                             CK_SPLUNK_PROTOCOL, "Splunk Protocol", "UDP", protocols,
                             "协议类型",
                             ConfigurationField.Optional.OPTIONAL)
             );
 
+            final Map<String, String> encoders = ImmutableMap.of(
+                    ENCODER_TLOG, "tlog",
+                    ENCODER_SPLUNK, "Splunk key=value",
+                    ENCODER_JSON, "JSON",
+                    ENCODER_CSV, "CSV");
+            configurationRequest.addField(new DropdownField(
+                            CK_SPLUNK_ENCODER, "Encoder", ENCODER_TLOG, encoders,
+                            "输出格式",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
             configurationRequest.addField(new TextField(
                     CK_SPLUNK_PARAMS, "params", "",
-                    "参数列表",
-                    ConfigurationField.Optional.NOT_OPTIONAL)
+                    "参数列表，tlog格式时必填",
+                    ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                    CK_FIELDS_INCLUDE, "Included fields", "",
+                    "逗号分隔的字段列表，只发送这些字段，未填写时发送全部字段",
+                    ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                    CK_FIELDS_EXCLUDE, "Excluded fields", "",
+                    "逗号分隔的字段列表，未填写Included fields时跳过这些字段",
+                    ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_IN_FLIGHT_LIMIT, "In-flight limit", DEFAULT_IN_FLIGHT_LIMIT,
+                            "最多未发送完成的消息数，超过时丢弃新消息而不阻塞Graylog",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_STAGING_MEGABYTES, "Staging memory (MB)", DEFAULT_STAGING_MEGABYTES,
+                            "等待发送的消息最多占用的堆外内存，超过时丢弃新消息；所有output共享的总量由-D" + StagingArea.BUDGET_PROPERTY + "限制",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_FLUSH_TIMEOUT, "Flush timeout (ms)", DEFAULT_FLUSH_TIMEOUT,
+                            "停止output时等待未发送消息的最长时间，0表示不等待；超时后仍未发送的消息写入-D" + SpillFile.DIRECTORY_PROPERTY + "指定的目录，未指定时丢弃并计数",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            final Map<String, String> senderModes = ImmutableMap.of(
+                    SenderMode.PLATFORM_THREAD.name(), "Platform thread",
+                    SenderMode.VIRTUAL_THREAD.name(), "Virtual thread (JDK 21+)",
+                    SenderMode.EVENT_LOOP.name(), "Event loop");
+            configurationRequest.addField(new DropdownField(
+                            CK_SENDER_MODE, "Sender mode", SenderMode.PLATFORM_THREAD.name(), senderModes,
+                            "发送线程模式，低于JDK 21时使用普通线程",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_PARALLEL_ENCODING_THRESHOLD, "Parallel encoding threshold", 0,
+                            "批量消息数达到该值时并行编码，0表示不并行",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_SENDER_LANES, "Sender lanes", 1,
+                            "发送通道数，每个通道有独立的队列和连接",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_LANE_KEY_FIELD, "Lane key field", Message.FIELD_SOURCE,
+                            "按该字段的值分配发送通道，相同值的消息保持顺序",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_PRIORITY_CLASSES, "Priority classes", "",
+                            "优先级分类，类别之间用分号分隔、按优先级从高到低排列，类别内的值用逗号分隔，如billing,payment;login；未匹配的消息为最低优先级",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_PRIORITY_FIELD, "Priority field", "",
+                            "按该字段的值匹配优先级分类，不填时按params中的flow名称匹配，整个output使用同一优先级",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_PRIORITY_WEIGHTS, "Priority weights", "",
+                            "最高优先级之外各级每轮发送的条数，逗号分隔，如4,1；不填时逐级减半",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            final Map<String, String> framings = ImmutableMap.of(
+                    Framing.LINE.name(), "Line (CRLF)",
+                    Framing.OCTET_COUNTED.name(), "Octet counted (RFC 6587)");
+            configurationRequest.addField(new DropdownField(
+                            CK_TCP_FRAMING, "TCP framing", Framing.LINE.name(), framings,
+                            "TCP下事件的分隔方式：每行以CRLF结尾（值中的换行替换为空格），或在每个事件前加上字节数（值原样发送，可保留多行堆栈）",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new BooleanField(
+                            CK_TCP_SYSLOG_HEADER, "TCP syslog header", false,
+                            "TCP下在每个事件前加上RFC 5424头，主机名为消息的source，APP-NAME为params")
+            );
+
+            configurationRequest.addField(new BooleanField(
+                            CK_SHARE_CONNECTIONS, "Share connections", true,
+                            "发送到同一接收端且参数相同的output共用连接和发送线程")
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_UDP_PACKETS_PER_SECOND, "UDP packets per second", 0,
+                            "UDP每秒最多发送的包数，0表示不限制",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_UDP_BYTES_PER_SECOND, "UDP bytes per second", 0,
+                            "UDP每秒最多发送的字节数，0表示不限制",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_UDP_BURST, "UDP burst (ms)", DEFAULT_UDP_BURST,
+                            "允许一次性突发发送的流量，以毫秒计的速率额度",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new BooleanField(
+                            CK_UDP_ADAPTIVE_PACING, "Adaptive UDP pacing", false,
+                            "根据接收端回报的丢包率自动降低或恢复发送速率")
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_UDP_MAX_DATAGRAM, "UDP max datagram size", SizeLimitedSender.MAX_UDP_PAYLOAD,
+                            "单个UDP包的最大字节数，超过时按Oversize policy处理；设为路径MTU以下可避免IP分片",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            final Map<String, String> oversizePolicies = ImmutableMap.of(
+                    OversizePolicy.TRUNCATE.name(), "Truncate",
+                    OversizePolicy.DROP.name(), "Drop",
+                    OversizePolicy.FRAGMENT.name(), "Fragment");
+            configurationRequest.addField(new DropdownField(
+                            CK_UDP_OVERSIZE_POLICY, "UDP oversize policy", OversizePolicy.TRUNCATE.name(), oversizePolicies,
+                            "超长行的处理方式：截断并加[TRUNCATED]标记、丢弃并计数、或分片发送由接收端重组",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new BooleanField(
+                            CK_UDP_SEQUENCE_NUMBERS, "UDP sequence numbers", false,
+                            "每个UDP包前加上#发送端ID:序号，用于统计丢包，接收端需去掉该前缀")
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_FILE_PATTERN, "File name pattern", DEFAULT_FILE_PATTERN,
+                            "FILE协议的文件名，按SimpleDateFormat格式，文件名变化时切换到新文件，应与tlog服务器的切分方式一致",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_FILE_ROLL_MEGABYTES, "File roll size (MB)", 0,
+                            "FILE协议下单个文件的最大大小，超过后续写到<文件名>.1、.2……，0表示不限制",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_FILE_SYNC_MS, "File sync interval (ms)", DEFAULT_FILE_SYNC_MS,
+                            "FILE协议下写入的内容刷到磁盘的间隔",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_DEDUP_WINDOW, "Dedup window (s)", 0,
+                            "在该时间窗口内重复的行只发送一次，并在每个窗口结束时发送一行被去重的条数，0表示不去重",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_DEDUP_CAPACITY, "Dedup capacity", DEFAULT_DEDUP_CAPACITY,
+                            "每个窗口预计的不同行数，决定去重占用的固定内存",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_DEDUP_FIELDS, "Dedup fields", "",
+                            "逗号分隔，按这些字段的值判断重复，为空时按除_id、时间戳和gl2_*以外的全部字段判断",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new NumberField(
+                            CK_AGGREGATE_WINDOW, "Aggregate window (s)", 0,
+                            "不发送原始消息，每个窗口结束时按分组发送一行汇总，0表示不汇总",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_AGGREGATE_GROUP_BY, "Aggregate group by", "",
+                            "逗号分隔的分组字段",
+                            ConfigurationField.Optional.OPTIONAL)
+            );
+
+            configurationRequest.addField(new TextField(
+                            CK_AGGREGATE_FIELDS, "Aggregate fields", "",
+                            "逗号分隔的数值字段，每组输出sum/min/max",
+                            ConfigurationField.Optional.OPTIONAL)
             );
 
             return configurationRequest;
@@ -16,11 +16,14 @@
  */
 package com.graylog.splunk.output;
 
+import com.google.inject.Scopes;
+import com.graylog.splunk.output.senders.SharedTransports;
 import org.graylog2.plugin.PluginModule;
 
 public class SplunkOutputModule extends PluginModule {
     @Override
     protected void configure() {
+        bind(SharedTransports.class).in(Scopes.SINGLETON);
         addMessageOutput(SplunkOutput.class);
         addConfigBeans();
     }
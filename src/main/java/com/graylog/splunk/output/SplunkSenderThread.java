@@ -17,18 +17,20 @@
 
 package com.graylog.splunk.output;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import com.graylog.splunk.output.diagnostics.DiagnosticLog;
+import com.graylog.splunk.output.diagnostics.jfr.FlightRecorderSupport;
+import com.graylog.splunk.output.diagnostics.jfr.SplunkSendEvent;
+import com.graylog.splunk.output.senders.LineHandOver;
+import com.graylog.splunk.output.senders.LineQueue;
+import com.graylog.splunk.output.senders.PendingLine;
+import com.graylog.splunk.output.senders.TokenBucket;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.DatagramPacket;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
@@ -37,26 +39,41 @@ import java.util.concurrent.locks.ReentrantLock;
 public class SplunkSenderThread {
 
     private static final Logger LOG = LoggerFactory.getLogger(SplunkSenderThread.class);
+    private static final IllegalArgumentException EMPTY_LINE = new IllegalArgumentException("Empty line");
+    private static final DiagnosticLog.Category WRITE_FAILED = DiagnosticLog.category("write.failed", 10, 1);
+    private static final ChannelFutureListener WRITE_FAILED_LISTENER = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (!future.isSuccess()) {
+                WRITE_FAILED.record(String.valueOf(future.cause()));
+            }
+        }
+    };
     private final ReentrantLock lock;
     private final Condition connectedCond;
     private final AtomicBoolean keepRunning = new AtomicBoolean(true);
     private final Thread senderThread;
     private Channel channel;
 
-    public SplunkSenderThread(final BlockingQueue<String> queue) {
+    /**
+     * @param handOver where a line taken but not written when the connection goes away is left for the
+     *                 thread of the next connection, and picked up from
+     */
+    public SplunkSenderThread(final LineQueue queue, final ThreadFactory threadFactory, final TokenBucket pacer,
+                              final LineHandOver handOver) {
         this.lock = new ReentrantLock();
         this.connectedCond = lock.newCondition();
 
-        this.senderThread = new Thread(new Runnable() {
+        this.senderThread = threadFactory.newThread(new Runnable() {
             @Override
             public void run() {
-                String message = null;
+                PendingLine message = null;
 
                 while (keepRunning.get()) {
                     // wait until we are connected to the Splunk server before polling log events from the queue
                     lock.lock();
                     try {
-                        while (channel == null || !channel.isActive()) {
+                        while (keepRunning.get() && (channel == null || !channel.isActive())) {
                             try {
                                 connectedCond.await();
                             } catch (InterruptedException e) {
@@ -66,51 +83,62 @@ public class SplunkSenderThread {
                                 }
                             }
                         }
-                        // we are connected, let's start sending logs
-                        try {
-                            // if we have a lingering event already, try to send that instead of polling a new one.
-                            if (message == null) {
-                                message = queue.poll(100, TimeUnit.MILLISECONDS);
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (!keepRunning.get()) {
+                        break;
+                    }
+
+                    // we are connected, let's start sending logs
+                    try {
+                        // if we have a lingering event already, try to send that instead of taking a new one.
+                        // Blocks without waking up while the queue is empty, stop() interrupts us.
+                        if (message == null) {
+                            message = handOver.take();
+                        }
+                        if (message == null) {
+                            message = queue.take();
+                            if (!message.getLine().isReadable()) {
+                                message.fail(EMPTY_LINE);
+                                message = null;
+                                continue;
                             }
-                            // if we are still connected, convert LoggingEvent to Splunk and send it
-                            // but if we aren't connected anymore, we'll have already pulled an event from the queue,
-                            // which we keep hanging around in this thread and in the next loop iteration will block until we are connected again.
-                            if (message != null && !message.isEmpty() && channel != null && channel.isActive()) {
-                                try {
-                                    if (null != channel.remoteAddress()) {
-                                        InetSocketAddress address = (InetSocketAddress)channel.remoteAddress();
-                                        LOG.info("channel地址 " + address.getHostName()+"  " + address.getPort() + " "+address.getHostString());
-                                    }
-                                    else {
-                                        LOG.error("channel地址为null");
-                                    }
-                                    ByteBuf byteBuf =  Unpooled.buffer(message.getBytes().length);
-                                    byteBuf.writeBytes(message.getBytes());
-                                    ChannelFuture future = channel.writeAndFlush(
-                                            new io.netty.channel.socket.DatagramPacket(byteBuf,
-                                                    new InetSocketAddress("10.1.16.201", 6667)));
-                                    future.addListener(new ChannelFutureListener() {
-                                        @Override
-                                        public void operationComplete(ChannelFuture channelFuture) throws Exception {
-                                            if (!future.isSuccess()) {
-                                                LOG.error("write failed ");
-                                            }
-                                        }
-                                    });
-                                }catch (Exception e){
-                                    LOG.error(e.getMessage());
+                            if (pacer != null) {
+                                final long delay = pacer.reserve(message.getLine().readableBytes());
+                                if (delay > 0) {
+                                    TimeUnit.NANOSECONDS.sleep(delay);
                                 }
-                                message = null;
                             }
-                        } catch (InterruptedException e) {
-                            // ignore, when stopping keepRunning will be set to false outside
-                            LOG.error(e.getMessage());
                         }
-                    } finally {
-                        lock.unlock();
+                        // if we are still connected, send it
+                        // but if we aren't connected anymore, we'll have already pulled an event from the queue,
+                        // which we keep hanging around in this thread and in the next loop iteration will block until we are connected again.
+                        if (channel.isActive()) {
+                            try {
+                                final SplunkSendEvent event = FlightRecorderSupport.ENABLED ? SplunkSendEvent.start() : null;
+                                final int bytes = message.getLine().readableBytes();
+                                final ChannelFuture write = channel.writeAndFlush(message.getLine())
+                                        .addListener(WRITE_FAILED_LISTENER)
+                                        .addListener(message);
+                                if (event != null) {
+                                    event.finishOn(write, 1, bytes);
+                                }
+                            } catch (Exception e) {
+                                WRITE_FAILED.record(String.valueOf(e.getMessage()));
+                            }
+                            message = null;
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore, when stopping keepRunning will be set to false outside
+                        LOG.debug("SplunkSenderThread interrupted.");
                     }
                 }
 
+                if (message != null) {
+                    handOver.put(message);
+                }
+
                 LOG.debug("SplunkSenderThread exiting!");
             }
         });
@@ -0,0 +1,136 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-message diagnostics that are cheap enough for the hot path.
+ *
+ * Every event is only counted. Once a minute a summary with the counts of all categories is logged at
+ * INFO. Single events are logged at DEBUG, at most {@code perSecond} per category and second, and only
+ * every {@code sampleEvery}-th of them with the message body attached.
+ *
+ * Each category logs through its own logger, {@code com.graylog.splunk.output.diagnostics.<category>},
+ * so single events can be switched on and off at runtime with Graylog's logger settings.
+ */
+public final class DiagnosticLog {
+
+    private static final Logger SUMMARY_LOG = LoggerFactory.getLogger(DiagnosticLog.class);
+
+    private static final long SUMMARY_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final ConcurrentMap<String, Category> CATEGORIES = new ConcurrentHashMap<>();
+    private static final AtomicLong NEXT_SUMMARY = new AtomicLong(System.nanoTime() + SUMMARY_INTERVAL_NANOS);
+
+    private DiagnosticLog() {
+    }
+
+    /**
+     * Returns the category with that name, creating it on first use.
+     */
+    public static Category category(String name, int perSecond, int sampleEvery) {
+        Category category = CATEGORIES.get(name);
+        if (category == null) {
+            final Category created = new Category(name, perSecond, sampleEvery);
+            category = CATEGORIES.putIfAbsent(name, created);
+            if (category == null) {
+                category = created;
+            }
+        }
+        return category;
+    }
+
+    private static void maybeLogSummary(long now) {
+        final long next = NEXT_SUMMARY.get();
+        if (now - next < 0 || !NEXT_SUMMARY.compareAndSet(next, now + SUMMARY_INTERVAL_NANOS)) {
+            return;
+        }
+
+        final StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Category> entry : CATEGORIES.entrySet()) {
+            final long count = entry.getValue().count.sumThenReset();
+            if (count > 0) {
+                summary.append(summary.length() == 0 ? "" : ", ").append(entry.getKey()).append('=').append(count);
+            }
+        }
+        if (summary.length() > 0) {
+            SUMMARY_LOG.info("Diagnostics for the last {}s: {}", TimeUnit.NANOSECONDS.toSeconds(SUMMARY_INTERVAL_NANOS), summary);
+        }
+    }
+
+    public static class Category {
+        private final String name;
+        private final Logger log;
+        private final int perSecond;
+        private final int sampleEvery;
+
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong logged = new AtomicLong();
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final AtomicInteger inWindow = new AtomicInteger();
+
+        private Category(String name, int perSecond, int sampleEvery) {
+            this.name = name;
+            this.log = LoggerFactory.getLogger(DiagnosticLog.class.getPackage().getName() + "." + name);
+            this.perSecond = perSecond;
+            this.sampleEvery = Math.max(1, sampleEvery);
+        }
+
+        /**
+         * Counts one event and logs it if DEBUG is on for this category and the rate limit allows it.
+         *
+         * @param body the message the event is about, only logged for sampled events; may be {@code null}
+         */
+        public void record(String reason, Object body) {
+            count.increment();
+            final long now = System.nanoTime();
+            maybeLogSummary(now);
+
+            if (!log.isDebugEnabled() || !tryAcquire(now)) {
+                return;
+            }
+            if (body != null && logged.getAndIncrement() % sampleEvery == 0) {
+                log.debug("[{}] {}: {}", name, reason, body);
+            } else {
+                log.debug("[{}] {}", name, reason);
+            }
+        }
+
+        public void record(String reason) {
+            record(reason, null);
+        }
+
+        private boolean tryAcquire(long now) {
+            final long start = windowStart.get();
+            if (now - start >= SECOND_NANOS && windowStart.compareAndSet(start, now)) {
+                inWindow.set(0);
+            }
+            return inWindow.incrementAndGet() <= perSecond;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latency distribution of one interval, recorded without locks.
+ *
+ * Every recording thread writes to its own {@link SingleWriterRecorder}. The recorders are merged into
+ * one histogram when a window is closed; percentiles are read from the last closed window.
+ */
+public class LatencyRecorder {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final long highestTrackableValue;
+    private final List<SingleWriterRecorder> recorders = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<SingleWriterRecorder> local = new ThreadLocal<SingleWriterRecorder>() {
+        @Override
+        protected SingleWriterRecorder initialValue() {
+            final SingleWriterRecorder recorder = new SingleWriterRecorder(highestTrackableValue, SIGNIFICANT_DIGITS);
+            recorders.add(recorder);
+            return recorder;
+        }
+    };
+
+    private final Histogram interval;
+    private Histogram window;
+    private Histogram lastWindow;
+
+    public LatencyRecorder(long highestTrackableValue) {
+        this.highestTrackableValue = highestTrackableValue;
+        this.interval = new Histogram(highestTrackableValue, SIGNIFICANT_DIGITS);
+        this.window = interval.copy();
+        this.lastWindow = window.copy();
+    }
+
+    /**
+     * Records one value; values outside of {@code 0..highestTrackableValue} are clamped.
+     */
+    public void record(long value) {
+        local.get().recordValue(Math.max(0, Math.min(value, highestTrackableValue)));
+    }
+
+    /**
+     * Merges what all threads recorded since the last call into a new window and keeps it for reading.
+     */
+    synchronized Histogram closeWindow() {
+        window.reset();
+        for (SingleWriterRecorder recorder : recorders) {
+            recorder.getIntervalHistogramInto(interval);
+            window.add(interval);
+        }
+        final Histogram closed = lastWindow;
+        lastWindow = window;
+        window = closed;
+        return lastWindow;
+    }
+
+    /**
+     * Value at a percentile of the last closed window.
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        return lastWindow.getValueAtPercentile(percentile);
+    }
+
+    public synchronized long getMaxValue() {
+        return lastWindow.getMaxValue();
+    }
+
+    public synchronized long getTotalCount() {
+        return lastWindow.getTotalCount();
+    }
+}
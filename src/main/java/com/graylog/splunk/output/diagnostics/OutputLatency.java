@@ -0,0 +1,139 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics;
+
+import com.codahale.metrics.Gauge;
+import com.graylog.splunk.output.OutputMetrics;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end latency of one output, in three intervals:
+ * <ul>
+ * <li>{@code age}: message timestamp to {@code write()}, in milliseconds,</li>
+ * <li>{@code enqueue}: {@code write()} to the line being queued, in microseconds,</li>
+ * <li>{@code send}: queued to written to the channel, in microseconds.</li>
+ * </ul>
+ * With priority lanes the send latency is also kept per lane. Windows are closed once a minute by a
+ * writing thread. Percentiles of the last window are exported as gauges and logged in one line.
+ */
+public class OutputLatency {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutputLatency.class);
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final LatencyRecorder age = new LatencyRecorder(TimeUnit.DAYS.toMillis(1));
+    private final LatencyRecorder enqueue = new LatencyRecorder(TimeUnit.HOURS.toMicros(1));
+    private final LatencyRecorder send = new LatencyRecorder(TimeUnit.HOURS.toMicros(1));
+    private final LatencyRecorder[] sendByPriority;
+    private final AtomicLong nextWindow = new AtomicLong(System.nanoTime() + WINDOW_NANOS);
+
+    public OutputLatency(String name, OutputMetrics metrics) {
+        this(name, metrics, 1);
+    }
+
+    /**
+     * @param priorities number of priority lanes, send latency is kept per lane if there is more than one
+     */
+    public OutputLatency(String name, OutputMetrics metrics, int priorities) {
+        this.name = name;
+        register(metrics, "latency.age", age);
+        register(metrics, "latency.enqueue", enqueue);
+        register(metrics, "latency.send", send);
+
+        sendByPriority = new LatencyRecorder[priorities > 1 ? priorities : 0];
+        for (int i = 0; i < sendByPriority.length; i++) {
+            sendByPriority[i] = new LatencyRecorder(TimeUnit.HOURS.toMicros(1));
+            register(metrics, "priority." + i + ".latency.send", sendByPriority[i]);
+        }
+    }
+
+    /**
+     * Records the age of a message when it reaches the output, and closes the window if it is due.
+     */
+    public void recordAge(long timestampMillis, long now) {
+        age.record(System.currentTimeMillis() - timestampMillis);
+        maybeCloseWindow(now);
+    }
+
+    public void recordEnqueue(long startNanos) {
+        enqueue.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public void recordSend(long submittedNanos) {
+        send.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - submittedNanos));
+    }
+
+    public void recordSend(long submittedNanos, int priority) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - submittedNanos);
+        send.record(micros);
+        if (priority < sendByPriority.length) {
+            sendByPriority[priority].record(micros);
+        }
+    }
+
+    private void maybeCloseWindow(long now) {
+        final long next = nextWindow.get();
+        if (now - next < 0 || !nextWindow.compareAndSet(next, now + WINDOW_NANOS)) {
+            return;
+        }
+
+        final Histogram ageWindow = age.closeWindow();
+        final Histogram enqueueWindow = enqueue.closeWindow();
+        final Histogram sendWindow = send.closeWindow();
+        final StringBuilder byPriority = new StringBuilder();
+        for (int i = 0; i < sendByPriority.length; i++) {
+            byPriority.append(", priority ").append(i).append(" send ").append(summary(sendByPriority[i].closeWindow())).append("us");
+        }
+        if (ageWindow.getTotalCount() > 0) {
+            LOG.info("Latency of output {} (p50/p99/p999/max): age {}ms, enqueue {}us, send {}us{}, {} messages",
+                    name, summary(ageWindow), summary(enqueueWindow), summary(sendWindow), byPriority, ageWindow.getTotalCount());
+        }
+    }
+
+    private static String summary(Histogram histogram) {
+        return histogram.getValueAtPercentile(50) + "/" + histogram.getValueAtPercentile(99) + "/"
+                + histogram.getValueAtPercentile(99.9) + "/" + histogram.getMaxValue();
+    }
+
+    private static void register(OutputMetrics metrics, String prefix, final LatencyRecorder recorder) {
+        registerPercentile(metrics, prefix + ".p50", recorder, 50);
+        registerPercentile(metrics, prefix + ".p99", recorder, 99);
+        registerPercentile(metrics, prefix + ".p999", recorder, 99.9);
+        metrics.gauge(prefix + ".max", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return recorder.getMaxValue();
+            }
+        });
+    }
+
+    private static void registerPercentile(OutputMetrics metrics, String name, final LatencyRecorder recorder, final double percentile) {
+        metrics.gauge(name, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return recorder.getValueAtPercentile(percentile);
+            }
+        });
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+/**
+ * Starts the plugin's Flight Recorder events. Each method returns {@code null} if the event is
+ * not enabled in any running recording, so nothing is allocated then.
+ */
+public interface FlightEvents {
+
+    SplunkEncodeEvent encode();
+
+    SplunkEnqueueEvent enqueue();
+
+    SplunkSendEvent send();
+
+    SplunkReconnectEvent reconnect();
+}
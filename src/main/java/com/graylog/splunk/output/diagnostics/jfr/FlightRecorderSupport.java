@@ -0,0 +1,50 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+/**
+ * Tells whether the plugin's Flight Recorder events can be used.
+ *
+ * The events extend {@code jdk.jfr.Event}, so they live in a separate source set that is only
+ * compiled on JDK 11+ and are loaded by name here. A plugin built on JDK 8, or running on a JDK
+ * without Flight Recorder, has no events. Callers must check {@link #ENABLED} before starting
+ * any event. Setting {@code -Dsplunk.output.jfr=false} turns the events off.
+ */
+public final class FlightRecorderSupport {
+
+    private static final String IMPLEMENTATION = "com.graylog.splunk.output.diagnostics.jfr.JfrEvents";
+
+    static final FlightEvents EVENTS = Boolean.parseBoolean(System.getProperty("splunk.output.jfr", "true"))
+            ? load() : null;
+
+    public static final boolean ENABLED = EVENTS != null;
+
+    private FlightRecorderSupport() {
+    }
+
+    private static FlightEvents load() {
+        try {
+            final Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            if (!(Boolean) flightRecorder.getMethod("isAvailable").invoke(null)) {
+                return null;
+            }
+            return (FlightEvents) Class.forName(IMPLEMENTATION).newInstance();
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+/**
+ * Encoding of one message into a line. Only call {@link #start()} if {@link FlightRecorderSupport#ENABLED}.
+ */
+public interface SplunkEncodeEvent {
+
+    /**
+     * @return the started event, or {@code null} if it is not being recorded
+     */
+    static SplunkEncodeEvent start() {
+        return FlightRecorderSupport.EVENTS.encode();
+    }
+
+    void finish(String encoder, int bytes);
+}
@@ -0,0 +1,32 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+/**
+ * Handing one line to a sender queue, including the wait for room in it. Only call {@link #start()} if {@link FlightRecorderSupport#ENABLED}.
+ */
+public interface SplunkEnqueueEvent {
+
+    /**
+     * @return the started event, or {@code null} if it is not being recorded
+     */
+    static SplunkEnqueueEvent start() {
+        return FlightRecorderSupport.EVENTS.enqueue();
+    }
+
+    void finish(int queueDepth, boolean accepted);
+}
@@ -0,0 +1,47 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+
+/**
+ * Writing a batch of lines to the channel, until the last of them is on the wire. Only call {@link #start()} if {@link FlightRecorderSupport#ENABLED}.
+ */
+public interface SplunkSendEvent {
+
+    /**
+     * @return the started event, or {@code null} if it is not being recorded
+     */
+    static SplunkSendEvent start() {
+        return FlightRecorderSupport.EVENTS.send();
+    }
+
+    void finish(int batchSize, long bytes, boolean success);
+
+    /**
+     * Ends the event once the write of the last line in the batch completes.
+     */
+    default void finishOn(ChannelFuture lastWrite, final int batchSize, final long bytes) {
+        lastWrite.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                finish(batchSize, bytes, future.isSuccess());
+            }
+        });
+    }
+}
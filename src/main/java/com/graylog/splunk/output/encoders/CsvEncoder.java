@@ -0,0 +1,98 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.google.common.collect.ImmutableList;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+
+import java.util.List;
+
+/**
+ * RFC 4180 CSV, one row per event. The columns are the included fields of the projection,
+ * or timestamp, source and message if no fields are included.
+ *
+ * Line breaks in values are replaced by spaces, since a quoted line break would still end the
+ * event for a line-delimited receiver. They are only kept when the framing does not rely on them.
+ */
+public class CsvEncoder implements Encoder {
+
+    private static final List<String> DEFAULT_COLUMNS = ImmutableList.of(
+            Message.FIELD_TIMESTAMP, Message.FIELD_SOURCE, Message.FIELD_MESSAGE);
+
+    private final String[] columns;
+    private final boolean keepNewLines;
+
+    public CsvEncoder(FieldProjection projection) {
+        this(projection, false);
+    }
+
+    /**
+     * @param keepNewLines write line breaks in values as they are, for framings that do not rely on them
+     */
+    public CsvEncoder(FieldProjection projection, boolean keepNewLines) {
+        this.keepNewLines = keepNewLines;
+        final List<String> columnList = projection.isFixed() ? projection.getFieldList() : DEFAULT_COLUMNS;
+        this.columns = columnList.toArray(new String[columnList.size()]);
+    }
+
+    @Override
+    public boolean encode(Message message, ByteBuf out) {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.writeByte(',');
+            }
+            final Object value = message.getField(columns[i]);
+            if (value instanceof Long || value instanceof Integer) {
+                SplunkEscaper.writeLong(out, ((Number) value).longValue());
+            } else if (value != null) {
+                writeCell(out, value.toString());
+            }
+        }
+
+        return true;
+    }
+
+    private void writeCell(ByteBuf out, String value) {
+        if (!needsQuoting(value)) {
+            SplunkEscaper.writeUtf8(out, value, 0, value.length(), !keepNewLines);
+            return;
+        }
+
+        out.writeByte('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                SplunkEscaper.writeUtf8(out, value, from, i + 1, !keepNewLines);
+                out.writeByte('"');
+                from = i + 1;
+            }
+        }
+        SplunkEscaper.writeUtf8(out, value, from, value.length(), !keepNewLines);
+        out.writeByte('"');
+    }
+
+    private boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ',' || c == '"' || keepNewLines && (c == '\r' || c == '\n')) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+
+import java.util.Map;
+
+/**
+ * Formats a message into the wire representation of one event.
+ *
+ * Implementations are shared by all threads writing to an output and must be thread-safe.
+ */
+public interface Encoder {
+
+    /**
+     * Writes the event for the given message into {@code out}, without a line terminator.
+     *
+     * @return {@code false} if the message must not be sent, the content of {@code out} is undefined then
+     */
+    boolean encode(Message message, ByteBuf out);
+
+    /**
+     * The fields the event for the given message is made of, for stages that work on field values
+     * instead of lines, such as aggregation.
+     *
+     * @return the fields by name, or {@code null} if the message must not be sent
+     */
+    default Map<String, Object> fields(Message message) {
+        return message.getFields();
+    }
+
+    /**
+     * Builds a message that this encoder turns into an event with the given fields, for events the
+     * output creates itself, such as rollups.
+     */
+    default Message message(String text, String source, DateTime timestamp, Map<String, Object> fields) {
+        final Message message = new Message(text, source, timestamp);
+        message.addFields(fields);
+        return message;
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The set of message fields an output writes, compiled once when the output starts.
+ *
+ * With an include list the fields are looked up directly by name and written with
+ * pre-encoded {@code " key="} prefixes, so the message's field map is never iterated.
+ * Without one, all fields except the reserved ones and the excluded ones are written.
+ */
+public class FieldProjection {
+
+    private static final Splitter LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final List<String> fieldList;
+    private final String[] fields;
+    private final byte[][] keyPrefixes;
+    private final Set<String> excluded;
+
+    private FieldProjection(List<String> included, Set<String> excluded) {
+        this.fieldList = included;
+        this.fields = included.toArray(new String[included.size()]);
+        this.keyPrefixes = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            keyPrefixes[i] = (" " + fields[i] + "=").getBytes(StandardCharsets.UTF_8);
+        }
+        this.excluded = excluded;
+    }
+
+    /**
+     * @param include comma separated list of fields to write, all fields if empty
+     * @param exclude comma separated list of fields to skip when writing all fields
+     */
+    public static FieldProjection of(String include, String exclude) {
+        final List<String> included = include == null
+                ? ImmutableList.<String>of()
+                : ImmutableSet.copyOf(LIST_SPLITTER.split(include)).asList();
+
+        final ImmutableSet.Builder<String> excluded = ImmutableSet.<String>builder()
+                .addAll(Message.RESERVED_FIELDS)
+                .add(Message.FIELD_STREAMS);
+        if (exclude != null) {
+            excluded.addAll(LIST_SPLITTER.split(exclude));
+        }
+
+        return new FieldProjection(included, excluded.build());
+    }
+
+    public boolean isFixed() {
+        return fields.length > 0;
+    }
+
+    /**
+     * The included field names in configuration order, empty if all fields are written.
+     */
+    public List<String> getFieldList() {
+        return fieldList;
+    }
+
+    public boolean isExcluded(String field) {
+        return excluded.contains(field);
+    }
+
+    /**
+     * Writes the selected fields as {@code " key=value"} pairs.
+     */
+    public void writeKeyValues(Message message, ByteBuf out) {
+        writeKeyValues(message, out, false);
+    }
+
+    /**
+     * Writes the selected fields as {@code " key=value"} pairs, keeping line breaks in values if requested.
+     */
+    public void writeKeyValues(Message message, ByteBuf out, boolean keepNewLines) {
+        if (isFixed()) {
+            for (int i = 0; i < fields.length; i++) {
+                final Object value = message.getField(fields[i]);
+                if (value == null) {
+                    continue;
+                }
+                out.writeBytes(keyPrefixes[i]);
+                SplunkEscaper.writeValue(out, value, keepNewLines);
+            }
+            return;
+        }
+
+        for (String key : message.getFieldNames()) {
+            if (excluded.contains(key)) {
+                continue;
+            }
+            out.writeByte(' ');
+            SplunkEscaper.writeUtf8(out, key);
+            out.writeByte('=');
+            SplunkEscaper.writeValue(out, message.getField(key), keepNewLines);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+/**
+ * How the receiver finds the end of an event on a stream.
+ */
+public enum Framing {
+    /**
+     * Events end with CRLF, line breaks inside values are replaced by spaces.
+     */
+    LINE,
+    /**
+     * Events are prefixed with their length in bytes as in RFC 6587 octet counting,
+     * {@code <length> <event>}, and values are written as they are.
+     */
+    OCTET_COUNTED;
+
+    public boolean keepsNewLines() {
+        return this == OCTET_COUNTED;
+    }
+}
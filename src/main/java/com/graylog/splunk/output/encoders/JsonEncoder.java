@@ -0,0 +1,227 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.graylog.splunk.output.diagnostics.DiagnosticLog;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.ReadableInstant;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One JSON object per event with the timestamp, source, message and the projected fields.
+ *
+ * Fields are streamed through a {@link JsonGenerator} straight into the output buffer. Each
+ * producer thread keeps one generator, bound to an output stream that is re-pointed at the
+ * buffer of the current event, so no intermediate map or string is built per message.
+ */
+public class JsonEncoder implements Encoder {
+
+    private static final DiagnosticLog.Category FAILED = DiagnosticLog.category("json.failed", 10, 1);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+            .setRootValueSeparator(null);
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = ISODateTimeFormat.dateTime();
+
+    private static final SerializableString TIMESTAMP = new SerializedString(Message.FIELD_TIMESTAMP);
+    private static final SerializableString SOURCE = new SerializedString(Message.FIELD_SOURCE);
+    private static final SerializableString MESSAGE = new SerializedString(Message.FIELD_MESSAGE);
+
+    private static final ThreadLocal<JsonWriter> WRITERS = new ThreadLocal<JsonWriter>() {
+        @Override
+        protected JsonWriter initialValue() {
+            return new JsonWriter();
+        }
+    };
+
+    private final FieldProjection projection;
+    private final String[] fields;
+    private final SerializableString[] fieldNames;
+
+    public JsonEncoder(FieldProjection projection) {
+        this.projection = projection;
+
+        final List<String> fieldList = projection.getFieldList();
+        this.fields = fieldList.toArray(new String[fieldList.size()]);
+        this.fieldNames = new SerializableString[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fieldNames[i] = new SerializedString(fields[i]);
+        }
+    }
+
+    @Override
+    public boolean encode(Message message, ByteBuf out) {
+        final JsonWriter writer = WRITERS.get();
+        try {
+            writer.out = out;
+            writeEvent(writer, message);
+            writer.generator.flush();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // The generator is in an unknown state now, start over with a fresh one.
+            WRITERS.remove();
+            FAILED.record("could not serialize message <" + message.getId() + ">: " + e.getMessage());
+            return false;
+        } finally {
+            writer.out = null;
+        }
+    }
+
+    private void writeEvent(JsonWriter writer, Message message) throws IOException {
+        final JsonGenerator generator = writer.generator;
+        generator.writeStartObject();
+
+        generator.writeFieldName(TIMESTAMP);
+        writer.writeInstant(message.getTimestamp());
+        generator.writeFieldName(SOURCE);
+        generator.writeString(message.getSource());
+        generator.writeFieldName(MESSAGE);
+        generator.writeString(message.getMessage());
+
+        if (projection.isFixed()) {
+            for (int i = 0; i < fields.length; i++) {
+                final Object value = message.getField(fields[i]);
+                if (value != null) {
+                    generator.writeFieldName(fieldNames[i]);
+                    writer.writeValue(value);
+                }
+            }
+        } else {
+            for (String key : message.getFieldNames()) {
+                if (projection.isExcluded(key)) {
+                    continue;
+                }
+                final Object value = message.getField(key);
+                if (value != null) {
+                    generator.writeFieldName(key);
+                    writer.writeValue(value);
+                }
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Per-thread generator state. The generator writes to this stream, which forwards to the buffer of the current event.
+     */
+    private static class JsonWriter extends OutputStream {
+        private final JsonGenerator generator;
+        private final StringBuilder dateBuilder = new StringBuilder(32);
+        private char[] dateChars = new char[32];
+        private ByteBuf out;
+
+        JsonWriter() {
+            try {
+                this.generator = JSON_FACTORY.createGenerator(this);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            out.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            out.writeBytes(b, off, len);
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value instanceof String) {
+                generator.writeString((String) value);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                generator.writeNumber(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                generator.writeNumber((Long) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                generator.writeNumber(((Number) value).doubleValue());
+            } else if (value instanceof BigDecimal) {
+                generator.writeNumber((BigDecimal) value);
+            } else if (value instanceof BigInteger) {
+                generator.writeNumber((BigInteger) value);
+            } else if (value instanceof Boolean) {
+                generator.writeBoolean((Boolean) value);
+            } else if (value instanceof ReadableInstant) {
+                writeInstant((ReadableInstant) value);
+            } else if (value instanceof Date) {
+                writeInstant(new DateTime(value));
+            } else if (value instanceof Map) {
+                generator.writeStartObject();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    generator.writeFieldName(String.valueOf(entry.getKey()));
+                    writeNullable(entry.getValue());
+                }
+                generator.writeEndObject();
+            } else if (value instanceof Collection) {
+                generator.writeStartArray();
+                for (Object element : (Collection<?>) value) {
+                    writeNullable(element);
+                }
+                generator.writeEndArray();
+            } else if (value instanceof Object[]) {
+                generator.writeStartArray();
+                for (Object element : (Object[]) value) {
+                    writeNullable(element);
+                }
+                generator.writeEndArray();
+            } else {
+                generator.writeString(value.toString());
+            }
+        }
+
+        private void writeNullable(Object value) throws IOException {
+            if (value == null) {
+                generator.writeNull();
+            } else {
+                writeValue(value);
+            }
+        }
+
+        void writeInstant(ReadableInstant instant) throws IOException {
+            dateBuilder.setLength(0);
+            TIMESTAMP_FORMAT.printTo(dateBuilder, instant);
+
+            final int length = dateBuilder.length();
+            if (dateChars.length < length) {
+                dateChars = new char[length];
+            }
+            dateBuilder.getChars(0, length, dateChars, 0);
+            generator.writeString(dateChars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splunk key=value format: {@code yyyy/MM/dd-HH:mm:ss.SSS message original_source=source key=value ...}
+ */
+public class KeyValueEncoder implements Encoder {
+
+    private static final byte[] ORIGINAL_SOURCE = " original_source=".getBytes(StandardCharsets.US_ASCII);
+
+    private final FieldProjection projection;
+    private final boolean keepNewLines;
+
+    public KeyValueEncoder(FieldProjection projection) {
+        this(projection, false);
+    }
+
+    /**
+     * @param keepNewLines write line breaks in values as they are, for framings that do not rely on them
+     */
+    public KeyValueEncoder(FieldProjection projection, boolean keepNewLines) {
+        this.projection = projection;
+        this.keepNewLines = keepNewLines;
+    }
+
+    @Override
+    public boolean encode(Message message, ByteBuf out) {
+        writeTimestamp(out, message.getTimestamp());
+        out.writeByte(' ');
+        SplunkEscaper.writeText(out, message.getMessage(), keepNewLines);
+        out.writeBytes(ORIGINAL_SOURCE);
+        SplunkEscaper.writeValue(out, message.getField(Message.FIELD_SOURCE), keepNewLines);
+        projection.writeKeyValues(message, out, keepNewLines);
+
+        return true;
+    }
+
+    /**
+     * Same output as {@code timestamp.toString("yyyy/MM/dd-HH:mm:ss.SSS")} without building a string.
+     */
+    public static void writeTimestamp(ByteBuf out, DateTime timestamp) {
+        writeDigits(out, timestamp.getYear(), 4);
+        out.writeByte('/');
+        writeDigits(out, timestamp.getMonthOfYear(), 2);
+        out.writeByte('/');
+        writeDigits(out, timestamp.getDayOfMonth(), 2);
+        out.writeByte('-');
+        writeDigits(out, timestamp.getHourOfDay(), 2);
+        out.writeByte(':');
+        writeDigits(out, timestamp.getMinuteOfHour(), 2);
+        out.writeByte(':');
+        writeDigits(out, timestamp.getSecondOfMinute(), 2);
+        out.writeByte('.');
+        writeDigits(out, timestamp.getMillisOfSecond(), 3);
+    }
+
+    static void writeDigits(ByteBuf out, int value, int width) {
+        if (value < 0 || value >= pow10(width)) {
+            SplunkEscaper.writeLong(out, value);
+            return;
+        }
+        for (int divisor = pow10(width - 1); divisor > 0; divisor /= 10) {
+            out.writeByte('0' + (value / divisor) % 10);
+        }
+    }
+
+    private static int pow10(int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.graylog.splunk.output.diagnostics.jfr.FlightRecorderSupport;
+import com.graylog.splunk.output.diagnostics.jfr.SplunkEncodeEvent;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.graylog2.plugin.Message;
+
+/**
+ * Encodes a message into a pooled direct buffer holding one complete, framed event.
+ *
+ * With {@link Framing#OCTET_COUNTED} the buffer starts with a slot wide enough for any length
+ * prefix. The event is encoded behind it, and once its length is known the prefix is written
+ * right-aligned into the slot and the reader index moved to its first digit, so the event is
+ * never copied.
+ */
+public class LineEncoder {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    // Digits of Integer.MAX_VALUE and the space after the length.
+    private static final int LENGTH_SLOT = 11;
+
+    private final Encoder encoder;
+    private final String encoderName;
+    private final Framing framing;
+    private final SyslogHeader header;
+
+    public LineEncoder(Encoder encoder) {
+        this(encoder, Framing.LINE, null);
+    }
+
+    /**
+     * @param header RFC 5424 header written in front of every event, {@code null} for none
+     */
+    public LineEncoder(Encoder encoder, Framing framing, SyslogHeader header) {
+        this.encoder = encoder;
+        this.encoderName = encoder.getClass().getSimpleName();
+        this.framing = framing;
+        this.header = header;
+    }
+
+    /**
+     * @return the line, owned by the caller, or {@code null} if the message must not be sent
+     */
+    public ByteBuf encode(Message message) {
+        final SplunkEncodeEvent event = FlightRecorderSupport.ENABLED ? SplunkEncodeEvent.start() : null;
+        final ByteBuf line = newLine(message);
+        try {
+            if (!encoder.encode(message, line)) {
+                line.release();
+                return null;
+            }
+        } catch (RuntimeException e) {
+            line.release();
+            throw e;
+        }
+        complete(line);
+        if (event != null) {
+            event.finish(encoderName, line.readableBytes());
+        }
+        return line;
+    }
+
+    private ByteBuf newLine(Message message) {
+        final ByteBuf line = PooledByteBufAllocator.DEFAULT.directBuffer();
+        if (framing == Framing.OCTET_COUNTED) {
+            line.writerIndex(LENGTH_SLOT).readerIndex(LENGTH_SLOT);
+        }
+        if (header != null) {
+            header.write(line, message);
+        }
+        return line;
+    }
+
+    private ByteBuf complete(ByteBuf line) {
+        if (framing == Framing.LINE) {
+            return line.writeBytes(CRLF);
+        }
+        int length = line.readableBytes();
+        int index = line.readerIndex() - 1;
+        line.setByte(index, ' ');
+        do {
+            line.setByte(--index, '0' + length % 10);
+            length /= 10;
+        } while (length > 0);
+        return line.readerIndex(index);
+    }
+}
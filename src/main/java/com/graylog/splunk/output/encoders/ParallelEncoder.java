@@ -0,0 +1,109 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.graylog.splunk.output.diagnostics.DiagnosticLog;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encodes large batches on the common fork/join pool. The batch is split into chunks that are
+ * encoded concurrently, and the lines are returned in the order of the batch. Batches below
+ * the threshold are encoded on the calling thread.
+ *
+ * The common pool is used rather than a pool of the plugin's own, which no output could shut
+ * down as long as other outputs still use it.
+ */
+public class ParallelEncoder {
+
+    private static final DiagnosticLog.Category FAILED = DiagnosticLog.category("encode.failed", 10, 1);
+
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private final LineEncoder encoder;
+    private final int threshold;
+
+    /**
+     * @param threshold minimum batch size that is encoded in parallel, {@code 0} to always encode inline
+     */
+    public ParallelEncoder(LineEncoder encoder, int threshold) {
+        this.encoder = encoder;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return one line per message, {@code null} for messages that must not be sent
+     */
+    public ByteBuf[] encode(List<Message> messages) {
+        final ByteBuf[] lines = new ByteBuf[messages.size()];
+        if (threshold <= 0 || messages.size() < threshold) {
+            encodeRange(messages, lines, 0, lines.length);
+        } else {
+            final ForkJoinPool pool = ForkJoinPool.commonPool();
+            final int chunkSize = Math.max(MIN_CHUNK_SIZE, lines.length / (pool.getParallelism() * 4));
+            pool.invoke(new EncodeTask(messages, lines, 0, lines.length, chunkSize));
+        }
+        return lines;
+    }
+
+    private void encodeRange(List<Message> messages, ByteBuf[] lines, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final Message message = messages.get(i);
+            if (message == null) {
+                continue;
+            }
+            try {
+                lines[i] = encoder.encode(message);
+            } catch (RuntimeException e) {
+                FAILED.record("could not encode message <" + message.getId() + ">: " + e.getMessage());
+            }
+        }
+    }
+
+    private class EncodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Message> messages;
+        private final ByteBuf[] lines;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        EncodeTask(List<Message> messages, ByteBuf[] lines, int from, int to, int chunkSize) {
+            this.messages = messages;
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                encodeRange(messages, lines, from, to);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new EncodeTask(messages, lines, from, middle, chunkSize),
+                    new EncodeTask(messages, lines, middle, to, chunkSize));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writes field values in Splunk key=value notation directly into a {@link ByteBuf}.
+ *
+ * A value is wrapped in double quotes if it contains whitespace, and CR/LF characters are
+ * replaced by spaces so that one event always stays on one line, unless the framing does not
+ * rely on line breaks and they are kept. Values are UTF-8 encoded while they are scanned, so
+ * values that need no change are written without allocating.
+ */
+public final class SplunkEscaper {
+
+    private static final byte QUOTE = '"';
+    private static final byte SPACE = ' ';
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] LONG_MIN_VALUE = {
+            '-', '9', '2', '2', '3', '3', '7', '2', '0', '3', '6', '8', '5', '4', '7', '7', '5', '8', '0', '8'
+    };
+
+    private SplunkEscaper() {
+    }
+
+    /**
+     * Writes a field value, quoting it if it contains whitespace and replacing line breaks.
+     */
+    public static void writeValue(ByteBuf out, Object value) {
+        writeValue(out, value, false);
+    }
+
+    /**
+     * Writes a field value, quoting it if it contains whitespace, and keeping or replacing line breaks.
+     */
+    public static void writeValue(ByteBuf out, Object value, boolean keepNewLines) {
+        if (value instanceof String && keepNewLines) {
+            final String s = (String) value;
+            final boolean quoted = indexOfWhitespace(s) >= 0;
+            if (quoted) {
+                out.writeByte(QUOTE);
+            }
+            writeUtf8(out, s, 0, s.length(), false);
+            if (quoted) {
+                out.writeByte(QUOTE);
+            }
+        } else if (value instanceof String) {
+            final String s = (String) value;
+            final int firstWhitespace = indexOfWhitespace(s);
+            if (firstWhitespace < 0) {
+                // No whitespace means no CR/LF either, the value can be written as it is.
+                writeUtf8(out, s, 0, s.length(), false);
+            } else {
+                out.writeByte(QUOTE);
+                writeUtf8(out, s, 0, firstWhitespace, false);
+                writeUtf8(out, s, firstWhitespace, s.length(), true);
+                out.writeByte(QUOTE);
+            }
+        } else {
+            writeScalar(out, value);
+        }
+    }
+
+    /**
+     * Writes a value without quoting it, but with CR/LF replaced by spaces.
+     */
+    public static void writeNoNewLines(ByteBuf out, Object value) {
+        writeText(out, value, false);
+    }
+
+    /**
+     * Writes a value without quoting it, keeping or replacing line breaks.
+     */
+    public static void writeText(ByteBuf out, Object value, boolean keepNewLines) {
+        if (value instanceof String) {
+            final String s = (String) value;
+            writeUtf8(out, s, 0, s.length(), !keepNewLines);
+        } else {
+            writeScalar(out, value);
+        }
+    }
+
+    /**
+     * Writes a string as UTF-8, as it is.
+     */
+    public static void writeUtf8(ByteBuf out, CharSequence s) {
+        writeUtf8(out, s, 0, s.length(), false);
+    }
+
+    /**
+     * Writes a range of a string as UTF-8, as it is.
+     */
+    static void writeUtf8(ByteBuf out, CharSequence s, int start, int end) {
+        writeUtf8(out, s, start, end, false);
+    }
+
+    /**
+     * Writes a long in decimal notation without going through {@link Long#toString(long)}.
+     */
+    public static void writeLong(ByteBuf out, long value) {
+        if (value == Long.MIN_VALUE) {
+            out.writeBytes(LONG_MIN_VALUE);
+            return;
+        }
+        if (value < 0) {
+            out.writeByte('-');
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10) {
+            digits++;
+        }
+
+        out.ensureWritable(digits);
+        final int start = out.writerIndex();
+        for (int i = start + digits - 1; i >= start; i--) {
+            out.setByte(i, (int) ('0' + value % 10));
+            value /= 10;
+        }
+        out.writerIndex(start + digits);
+    }
+
+    private static void writeScalar(ByteBuf out, Object value) {
+        if (value == null) {
+            out.writeBytes(NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeLong(out, ((Number) value).longValue());
+        } else {
+            writeUtf8(out, String.valueOf(value));
+        }
+    }
+
+    /**
+     * Same set of characters as the {@code \s} regular expression class.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int indexOfWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (isWhitespace(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static void writeUtf8(ByteBuf out, CharSequence s, int start, int end, boolean noNewLines) {
+        out.ensureWritable(end - start);
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                if (noNewLines && (c == '\n' || c == '\r')) {
+                    out.writeByte(SPACE);
+                } else {
+                    out.writeByte(c);
+                }
+            } else if (c < 0x800) {
+                out.writeByte(0xC0 | (c >> 6));
+                out.writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.writeByte(0xF0 | (codePoint >> 18));
+                out.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                out.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                out.writeByte(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, same replacement as String#getBytes(UTF_8).
+                out.writeByte('?');
+            } else {
+                out.writeByte(0xE0 | (c >> 12));
+                out.writeByte(0x80 | ((c >> 6) & 0x3F));
+                out.writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RFC 5424 header in front of an event:
+ * {@code <PRI>1 yyyy-MM-ddTHH:mm:ss.SSSZ hostname app-name - - - }.
+ *
+ * The facility is user-level, the severity is taken from the message's {@code level} field
+ * (informational if it has none). The hostname is the message's source. Header fields are
+ * printable US-ASCII without spaces, other characters are replaced by {@code _}.
+ */
+public class SyslogHeader {
+
+    private static final int FACILITY_USER = 1;
+    private static final int SEVERITY_INFORMATIONAL = 6;
+    private static final int MAX_HOSTNAME = 255;
+    private static final int MAX_APP_NAME = 48;
+    private static final byte[] NO_IDS = " - - - ".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] appName;
+
+    /**
+     * @param appName APP-NAME of the events, {@code null} for none
+     */
+    public SyslogHeader(String appName) {
+        final ByteBuf token = Unpooled.buffer();
+        writeToken(token, appName, MAX_APP_NAME);
+        this.appName = new byte[token.readableBytes()];
+        token.readBytes(this.appName);
+    }
+
+    /**
+     * Writes the header for a message, or for a line the output writes itself if {@code message} is {@code null}.
+     */
+    public void write(ByteBuf out, Message message) {
+        final int severity = message == null ? SEVERITY_INFORMATIONAL : severityOf(message.getField("level"));
+        out.writeByte('<');
+        SplunkEscaper.writeLong(out, FACILITY_USER * 8 + severity);
+        out.writeByte('>');
+        out.writeByte('1');
+        out.writeByte(' ');
+        writeTimestamp(out, message == null ? DateTime.now() : message.getTimestamp());
+        out.writeByte(' ');
+        writeToken(out, message == null ? null : message.getSource(), MAX_HOSTNAME);
+        out.writeByte(' ');
+        out.writeBytes(appName);
+        out.writeBytes(NO_IDS);
+    }
+
+    private static int severityOf(Object level) {
+        if (level instanceof Number) {
+            final int severity = ((Number) level).intValue();
+            if (severity >= 0 && severity <= 7) {
+                return severity;
+            }
+        }
+        return SEVERITY_INFORMATIONAL;
+    }
+
+    private static void writeTimestamp(ByteBuf out, DateTime timestamp) {
+        final DateTime utc = timestamp.getZone() == DateTimeZone.UTC ? timestamp : timestamp.withZone(DateTimeZone.UTC);
+        KeyValueEncoder.writeDigits(out, utc.getYear(), 4);
+        out.writeByte('-');
+        KeyValueEncoder.writeDigits(out, utc.getMonthOfYear(), 2);
+        out.writeByte('-');
+        KeyValueEncoder.writeDigits(out, utc.getDayOfMonth(), 2);
+        out.writeByte('T');
+        KeyValueEncoder.writeDigits(out, utc.getHourOfDay(), 2);
+        out.writeByte(':');
+        KeyValueEncoder.writeDigits(out, utc.getMinuteOfHour(), 2);
+        out.writeByte(':');
+        KeyValueEncoder.writeDigits(out, utc.getSecondOfMinute(), 2);
+        out.writeByte('.');
+        KeyValueEncoder.writeDigits(out, utc.getMillisOfSecond(), 3);
+        out.writeByte('Z');
+    }
+
+    private static void writeToken(ByteBuf out, String value, int maxLength) {
+        if (value == null || value.isEmpty()) {
+            out.writeByte('-');
+            return;
+        }
+        final int length = Math.min(value.length(), maxLength);
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            out.writeByte(c > ' ' && c < 0x7F ? c : '_');
+        }
+    }
+}
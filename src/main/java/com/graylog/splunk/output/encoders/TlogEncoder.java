@@ -0,0 +1,251 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import com.graylog.splunk.output.diagnostics.DiagnosticLog;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * tlog pipe format: picks the {@code key=value} pairs out of the {@code {...}} block of the
+ * message and writes the values of the configured tlog columns separated by {@code |}.
+ *
+ * The tlog format (e.g. {@code FlowName=xxx,column=default,...}) is read from
+ * {@value #FORMAT_DIRECTORY}{@code <flow name>} once, when the output starts.
+ */
+public class TlogEncoder implements Encoder {
+
+    private static final DiagnosticLog.Category NOT_MATCHED = DiagnosticLog.category("tlog.notMatched", 10, 100);
+    private static final DiagnosticLog.Category INVALID = DiagnosticLog.category("tlog.invalid", 10, 100);
+
+    public static final String FORMAT_DIRECTORY = "/home/graylog_conf/";
+
+    private static final String FLOW_NAME = "flowname";
+
+    private final String flowName;
+    private final String[] defaults;
+    private final Map<String, Integer> columns;
+    private final int flowNameColumn;
+    private final String invalidReason;
+    private final boolean keepNewLines;
+    private final ThreadLocal<String[]> values;
+
+    public TlogEncoder(String flowName, String format) {
+        this(flowName, format, false);
+    }
+
+    /**
+     * @param keepNewLines write line breaks in values as they are, for framings that do not rely on them
+     */
+    public TlogEncoder(String flowName, String format, boolean keepNewLines) {
+        this.flowName = flowName;
+        this.keepNewLines = keepNewLines;
+        this.invalidReason = "flow name is not " + flowName;
+
+        final List<String> defaultValues = new ArrayList<>();
+        this.columns = new HashMap<>();
+        for (String param : format.split(",")) {
+            if (param.trim().isEmpty()) {
+                continue;
+            }
+            final int eq = param.indexOf('=');
+            final String column = (eq < 0 ? param : param.substring(0, eq)).trim().toLowerCase(Locale.ENGLISH);
+            final String defaultValue = eq < 0 ? "" : param.substring(eq + 1).trim();
+
+            final Integer existing = columns.get(column);
+            if (existing != null) {
+                defaultValues.set(existing, defaultValue);
+            } else {
+                columns.put(column, defaultValues.size());
+                defaultValues.add(defaultValue);
+            }
+        }
+        this.defaults = defaultValues.toArray(new String[defaultValues.size()]);
+
+        final Integer flowNameIndex = columns.get(FLOW_NAME);
+        this.flowNameColumn = flowNameIndex == null ? -1 : flowNameIndex;
+
+        this.values = new ThreadLocal<String[]>() {
+            @Override
+            protected String[] initialValue() {
+                return new String[defaults.length];
+            }
+        };
+    }
+
+    public static TlogEncoder fromFormatFile(String flowName) throws IOException {
+        return fromFormatFile(flowName, false);
+    }
+
+    public static TlogEncoder fromFormatFile(String flowName, boolean keepNewLines) throws IOException {
+        final Path path = Paths.get(FORMAT_DIRECTORY + flowName);
+        return new TlogEncoder(flowName, new String(Files.readAllBytes(path), StandardCharsets.UTF_8), keepNewLines);
+    }
+
+    @Override
+    public boolean encode(Message message, ByteBuf out) {
+        final String[] row = parse(message);
+        if (row == null) {
+            return false;
+        }
+
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                out.writeByte('|');
+            }
+            SplunkEscaper.writeText(out, row[i], keepNewLines);
+        }
+
+        if (message instanceof GeneratedMessage) {
+            for (Map.Entry<String, Object> field : ((GeneratedMessage) message).extraFields.entrySet()) {
+                out.writeByte('|');
+                SplunkEscaper.writeText(out, field.getKey(), keepNewLines);
+                out.writeByte('=');
+                SplunkEscaper.writeText(out, field.getValue(), keepNewLines);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The tlog columns of the message, with their defaults filled in. Column names match case-insensitively.
+     */
+    @Override
+    public Map<String, Object> fields(Message message) {
+        final String[] row = parse(message);
+        if (row == null) {
+            return null;
+        }
+        final Map<String, Object> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, Integer> column : columns.entrySet()) {
+            fields.put(column.getKey(), row[column.getValue()]);
+        }
+        return fields;
+    }
+
+    /**
+     * A message whose body holds the fields, {@code text {FlowName=<flow>,key=value,...}}. Fields
+     * that are tlog columns end up in them, the others are appended after the columns as
+     * {@code |key=value}, so rollup counts and sums reach the receiver even if the flow has no
+     * columns for them.
+     */
+    @Override
+    public Message message(String text, String source, DateTime timestamp, Map<String, Object> fields) {
+        final StringBuilder body = new StringBuilder(text).append(" {FlowName=").append(flowName);
+        final Map<String, Object> extraFields = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (field.getKey().equalsIgnoreCase(FLOW_NAME)) {
+                continue;
+            }
+            body.append(',').append(field.getKey()).append('=').append(field.getValue());
+            if (!columns.containsKey(field.getKey().toLowerCase(Locale.ENGLISH))) {
+                extraFields.put(field.getKey(), field.getValue());
+            }
+        }
+        return new GeneratedMessage(body.append('}').toString(), source, timestamp, extraFields);
+    }
+
+    /**
+     * Picks the tlog columns out of the message body.
+     *
+     * @return the columns, in a per-thread array, or {@code null} if the message is no valid event of the flow
+     */
+    private String[] parse(Message message) {
+        final String str = message.getMessage();
+        if (str == null) {
+            return null;
+        }
+
+        final int open = str.indexOf('{');
+        final int close = str.lastIndexOf('}');
+        if (open < 0 || close < open) {
+            NOT_MATCHED.record("no {...} block", str);
+            return null;
+        }
+
+        final String[] row = values.get();
+        System.arraycopy(defaults, 0, row, 0, defaults.length);
+
+        int start = open + 1;
+        while (start < close) {
+            int end = str.indexOf(',', start);
+            if (end < 0 || end > close) {
+                end = close;
+            }
+            applyPair(str, start, end, row);
+            start = end + 1;
+        }
+
+        if (row.length == 0
+                || flowNameColumn >= 0 && (row[flowNameColumn].isEmpty() || !row[flowNameColumn].equals(flowName))) {
+            INVALID.record(invalidReason, str);
+            return null;
+        }
+        return row;
+    }
+
+    /**
+     * A message built by {@link #message}, with the fields that have no tlog column.
+     */
+    private static class GeneratedMessage extends Message {
+        private final Map<String, Object> extraFields;
+
+        GeneratedMessage(String message, String source, DateTime timestamp, Map<String, Object> extraFields) {
+            super(message, source, timestamp);
+            this.extraFields = extraFields;
+        }
+    }
+
+    /**
+     * Applies one {@code key = value} pair of the message body, ignoring pairs without exactly one {@code =}.
+     */
+    private void applyPair(String str, int start, int end, String[] row) {
+        final int eq = str.indexOf('=', start);
+        if (eq < 0 || eq >= end) {
+            return;
+        }
+        final int secondEq = str.indexOf('=', eq + 1);
+        if (secondEq >= 0 && secondEq < end) {
+            return;
+        }
+
+        final Integer column = columns.get(str.substring(start, eq).trim().toLowerCase(Locale.ENGLISH));
+        if (column == null) {
+            return;
+        }
+
+        final String value = str.substring(eq + 1, end).trim();
+        if (!value.isEmpty()) {
+            row[column] = value;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Appends lines to local files instead of sending them, for outputs running next to the tlog server's disk.
+ *
+ * One writer thread takes lines from the queue and copies them into a memory-mapped region of the
+ * current file, mapping the next region when one is full. Written lines are forced to disk together
+ * once per sync interval rather than one by one. File names come from a date pattern, so files roll
+ * over like the tlog server's whenever the name changes; a size limit continues a file as
+ * {@code <name>.1}, {@code <name>.2} and so on.
+ *
+ * Mapped regions are zero-filled past the last line. Files are truncated to their data when closed,
+ * and a file that was not closed cleanly is continued after its last non-zero byte.
+ */
+public class FileSender implements Transport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileSender.class);
+
+    private static final int MAP_REGION_BYTES = 16 * 1024 * 1024;
+    private static final int SCAN_BLOCK_BYTES = 64 * 1024;
+    private static final long NAME_CHECK_MILLIS = 1000;
+    // The writer is never interrupted, that would close the file channel under it.
+    private static final long POLL_MILLIS = 100;
+
+    private final File directory;
+    private final String pattern;
+    // Only used by the writer thread once it is started.
+    private final SimpleDateFormat format;
+    private final long rollBytes;
+    private final long syncMillis;
+    private final LineQueue queue;
+    private final Thread writer;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile boolean running = true;
+    private volatile boolean abandoned;
+    private volatile SenderState state = SenderState.STARTING;
+
+    // Only touched by the writer thread.
+    private String name;
+    private int part;
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private long nextNameCheck;
+    private boolean dirty;
+
+    /**
+     * @throws IllegalArgumentException if the pattern is no valid {@link SimpleDateFormat} pattern
+     */
+    public FileSender(String directory, String pattern, long rollBytes, long syncMillis, int queueSize, int[] priorityWeights) {
+        this.directory = new File(directory);
+        this.pattern = pattern;
+        this.format = new SimpleDateFormat(pattern);
+        this.rollBytes = Math.max(0, rollBytes);
+        this.syncMillis = Math.max(1, syncMillis);
+        this.queue = new LineQueue(queueSize, priorityWeights, true);
+        this.writer = SenderMode.PLATFORM_THREAD.threadFactory().newThread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        });
+        this.writer.setName("SplunkFileWriter-" + pattern);
+    }
+
+    private void writeLoop() {
+        long nextSync = System.currentTimeMillis() + syncMillis;
+        while (true) {
+            final PendingLine pending;
+            try {
+                // Once stopped, whatever is still queued is written before the files are closed.
+                pending = running ? queue.poll(Math.min(syncMillis, POLL_MILLIS), TimeUnit.MILLISECONDS) : queue.poll();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (pending == null && !running) {
+                break;
+            }
+
+            final long now = System.currentTimeMillis();
+            if (pending != null && abandoned) {
+                SpillFile.shared().discard(pending);
+            } else if (pending != null) {
+                write(pending, now);
+            }
+            if (now - nextSync >= 0) {
+                sync();
+                nextSync = now + syncMillis;
+            }
+        }
+        try {
+            close();
+        } catch (IOException e) {
+            LOG.warn("Could not close {}: {}", currentFile(), e.getMessage());
+        }
+    }
+
+    private void write(PendingLine pending, long now) {
+        final ByteBuf line = pending.getLine();
+        final int bytes = line.readableBytes();
+        try {
+            final boolean full = rollBytes > 0 && position > 0 && position + bytes > rollBytes;
+            if (channel == null || full || nameChanged(now)) {
+                roll(now, full);
+            }
+            if (region == null || position + bytes > regionStart + region.capacity()) {
+                remap(bytes);
+            }
+            final int offset = (int) (position - regionStart);
+            region.limit(offset + bytes).position(offset);
+            line.getBytes(line.readerIndex(), region);
+            position += bytes;
+            dirty = true;
+            state = running ? SenderState.READY : state;
+            pending.written();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not write to {}: {}", currentFile(), e.getMessage());
+            state = running ? SenderState.DEGRADED : state;
+            closeQuietly();
+            pending.fail(e);
+        }
+    }
+
+    private boolean nameChanged(long now) {
+        if (now - nextNameCheck < 0) {
+            return false;
+        }
+        nextNameCheck = now + NAME_CHECK_MILLIS;
+        return !format.format(new Date(now)).equals(name);
+    }
+
+    /**
+     * Closes the current file and opens the one lines go to now: a new name, the next part of a full
+     * file, or the same file again after an error. Existing files are continued.
+     */
+    private void roll(long now, boolean full) throws IOException {
+        close();
+        final String current = format.format(new Date(now));
+        if (!current.equals(name)) {
+            name = current;
+            part = 0;
+        } else if (full) {
+            part++;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        while (true) {
+            channel = FileChannel.open(currentFile().toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            position = dataEnd(channel);
+            if (rollBytes == 0 || position < rollBytes) {
+                break;
+            }
+            channel.close();
+            part++;
+        }
+        regionStart = position;
+        LOG.debug("Writing to {} from offset {}.", currentFile(), position);
+    }
+
+    private File currentFile() {
+        return new File(directory, part == 0 ? name : name + "." + part);
+    }
+
+    /**
+     * End of the lines in a file, skipping the zeros a mapped region that was not truncated leaves behind.
+     */
+    private static long dataEnd(FileChannel channel) throws IOException {
+        final ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_BYTES);
+        long end = channel.size();
+        while (end > 0) {
+            final long start = Math.max(0, end - SCAN_BLOCK_BYTES);
+            block.clear();
+            block.limit((int) (end - start));
+            while (block.hasRemaining() && channel.read(block, start + block.position()) >= 0) {
+                // read the whole block
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private void remap(int bytes) throws IOException {
+        unmap();
+        regionStart = position;
+        // A full region never reaches past the roll size, so a file that was not truncated stays small.
+        final long size = rollBytes > 0 ? Math.min(MAP_REGION_BYTES, rollBytes - position) : MAP_REGION_BYTES;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(size, bytes));
+    }
+
+    private void unmap() {
+        if (region != null) {
+            region.force();
+            MappedRegions.unmap(region);
+            region = null;
+        }
+    }
+
+    private void sync() {
+        if (dirty && region != null) {
+            region.force();
+            dirty = false;
+        }
+    }
+
+    private void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            unmap();
+            channel.truncate(position);
+        } finally {
+            channel.close();
+            channel = null;
+            dirty = false;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            LOG.debug("Could not close {}: {}", currentFile(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void initialize() {
+        if (started.compareAndSet(false, true)) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Lets the writer finish the queue and close the file, and waits for it, so a sender opened for
+     * the same files afterwards does not find them in use. If that takes more than three quarters of
+     * the timeout, the writer spills or drops the rest of the queue instead of writing it and has the
+     * remaining quarter to close the file.
+     */
+    @Override
+    public void stop(long timeout, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        state = SenderState.STOPPED;
+        running = false;
+        if (!started.get()) {
+            return;
+        }
+        try {
+            // join(0) would wait forever.
+            writer.join(Math.max(1, unit.toMillis(timeout) * 3 / 4));
+            if (writer.isAlive()) {
+                LOG.warn("Writer of {} did not finish in time, giving up the lines still queued.", pattern);
+                abandoned = true;
+                writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                if (writer.isAlive()) {
+                    LOG.warn("Writer of {} is still closing its file.", pattern);
+                }
+            }
+        } catch (InterruptedException e) {
+            abandoned = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line) {
+        return submit(line, null, LOWEST_PRIORITY);
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line, int priority) {
+        return submit(line, null, priority);
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line, StagingQuota quota, int priority) {
+        final int lane = queue.laneOf(priority);
+        final Promise<Void> promise = new TimedPromise(lane);
+        final PendingLine pending = NettySender.reserve(line, promise, quota);
+        if (pending == null) {
+            promise.setFailure(NettySender.BUDGET_EXHAUSTED);
+        } else if (!queue.offer(pending, lane)) {
+            pending.fail(NettySender.QUEUE_FULL);
+        }
+        return promise;
+    }
+
+    @Override
+    public SenderState getState() {
+        return state;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueDepth(int priority) {
+        return queue.size(priority);
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import java.util.Objects;
+
+/**
+ * Identifies the files a {@link FileSender} writes: two outputs with the same directory and name
+ * pattern always share one writer. The other options are taken from the output that opens the sink.
+ */
+public final class FileSinkKey {
+
+    private final String directory;
+    private final String pattern;
+    private final long rollBytes;
+    private final long syncMillis;
+    private final int queueSize;
+    private final int[] priorityWeights;
+
+    /**
+     * @param pattern         file name as a {@link java.text.SimpleDateFormat} pattern, a new file is started whenever the name changes
+     * @param rollBytes       size at which a file is continued as {@code <name>.1}, {@code <name>.2} and so on, 0 for no limit
+     * @param syncMillis      how often written lines are forced to disk
+     * @param priorityWeights weights of the priority lanes of the writer's queue, see {@link LineQueue}
+     */
+    public FileSinkKey(String directory, String pattern, long rollBytes, long syncMillis, int queueSize, int[] priorityWeights) {
+        this.directory = directory;
+        this.pattern = pattern;
+        this.rollBytes = rollBytes;
+        this.syncMillis = syncMillis;
+        this.queueSize = queueSize;
+        this.priorityWeights = priorityWeights.clone();
+    }
+
+    FileSender open() {
+        return new FileSender(directory, pattern, rollBytes, syncMillis, queueSize, priorityWeights);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileSinkKey)) {
+            return false;
+        }
+        final FileSinkKey that = (FileSinkKey) o;
+        return directory.equals(that.directory) && pattern.equals(that.pattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(directory, pattern);
+    }
+
+    @Override
+    public String toString() {
+        return "FILE " + directory + "/" + pattern;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+/**
+ * Keeps the line a sender thread had taken from the queue but could not write before its connection
+ * went away, so the thread of the next connection writes it instead of it getting lost.
+ */
+public class LineHandOver {
+
+    private PendingLine line;
+    private boolean closed;
+
+    /**
+     * @return the handed over line, or {@code null} if there is none
+     */
+    public synchronized PendingLine take() {
+        final PendingLine pending = line;
+        line = null;
+        return pending;
+    }
+
+    /**
+     * Hands the line over to the next thread, or spills or drops it if the sender has stopped.
+     */
+    public void put(PendingLine pending) {
+        synchronized (this) {
+            if (!closed) {
+                line = pending;
+                return;
+            }
+        }
+        SpillFile.shared().discard(pending);
+    }
+
+    /**
+     * Spills or drops a line still handed over and every line handed over from now on.
+     */
+    public void close() {
+        final PendingLine pending;
+        synchronized (this) {
+            closed = true;
+            pending = line;
+            line = null;
+        }
+        if (pending != null) {
+            SpillFile.shared().discard(pending);
+        }
+    }
+}
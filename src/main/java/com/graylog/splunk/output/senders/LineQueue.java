@@ -0,0 +1,156 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queue of a sender, split into priority lanes that each have their own capacity.
+ *
+ * Lane 0 has strict priority: whenever it holds a line, that line is taken next. The other lanes are
+ * served round robin, each taking up to its weight in lines per turn, so bulk traffic can neither
+ * delay the top lane nor take its room in the queue. With a single lane this is a plain FIFO.
+ *
+ * Any number of threads may add lines, but only one may take them.
+ */
+public class LineQueue {
+
+    private final Queue<PendingLine>[] lanes;
+    private final int[] weights;
+    // Counts queued lines in blocking mode, so take() can wait on all lanes at once.
+    private final Semaphore available;
+
+    // Weighted round robin state, only touched by the consumer.
+    private int turn = 0;
+    private int credit = 0;
+
+    /**
+     * @param capacity maximum number of lines per lane
+     * @param weights  lines taken per turn for each lane, the weight of lane 0 is not used; its length is the number of lanes
+     * @param blocking whether lines are taken by a thread that waits for them, or polled by an event loop
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LineQueue(int capacity, int[] weights, boolean blocking) {
+        this.weights = weights.length == 0 ? new int[]{1} : weights.clone();
+        this.lanes = new Queue[this.weights.length];
+        for (int i = 0; i < lanes.length; i++) {
+            this.weights[i] = Math.max(1, this.weights[i]);
+            lanes[i] = blocking
+                    ? new LinkedBlockingQueue<PendingLine>(capacity)
+                    : PlatformDependent.<PendingLine>newFixedMpscQueue(capacity);
+        }
+        this.available = blocking ? new Semaphore(0) : null;
+    }
+
+    public int levels() {
+        return lanes.length;
+    }
+
+    /**
+     * @return the lane for a priority, priorities past the last lane go to the last lane
+     */
+    public int laneOf(int priority) {
+        return Math.min(Math.max(0, priority), lanes.length - 1);
+    }
+
+    public boolean offer(PendingLine line, int priority) {
+        if (!lanes[laneOf(priority)].offer(line)) {
+            return false;
+        }
+        if (available != null) {
+            available.release();
+        }
+        return true;
+    }
+
+    /**
+     * @return the next line by priority, or {@code null} if all lanes are empty
+     */
+    public PendingLine poll() {
+        if (available != null && !available.tryAcquire()) {
+            return null;
+        }
+        return next();
+    }
+
+    /**
+     * Waits up to the timeout for the next line. Only supported by blocking queues.
+     *
+     * @return the next line by priority, or {@code null} if none arrived in time
+     */
+    public PendingLine poll(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (available.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            final PendingLine line = next();
+            if (line != null) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the next line. Only supported by blocking queues.
+     */
+    public PendingLine take() throws InterruptedException {
+        while (true) {
+            available.acquire();
+            final PendingLine line = next();
+            if (line != null) {
+                return line;
+            }
+        }
+    }
+
+    private PendingLine next() {
+        PendingLine line = lanes[0].poll();
+        if (line != null || lanes.length == 1) {
+            return line;
+        }
+        // Visits every lower lane at most once, starting with the one whose turn it is.
+        for (int i = 1; i < lanes.length; i++) {
+            if (credit == 0) {
+                turn = turn >= lanes.length - 1 ? 1 : turn + 1;
+                credit = weights[turn];
+            }
+            line = lanes[turn].poll();
+            if (line != null) {
+                credit--;
+                return line;
+            }
+            credit = 0;
+        }
+        return null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Queue<PendingLine> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    public int size(int lane) {
+        return lane < lanes.length ? lanes[lane].size() : 0;
+    }
+}
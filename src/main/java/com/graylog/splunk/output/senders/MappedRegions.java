@@ -0,0 +1,97 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Unmaps memory-mapped file regions right away instead of when the garbage collector gets to them.
+ *
+ * The JDK has no public API for this. On Java 9 and later {@code sun.misc.Unsafe.invokeCleaner} is
+ * used, on Java 8 the buffer's {@code sun.misc.Cleaner}. If neither is accessible the region stays
+ * mapped until it is collected: nothing breaks on Linux, but address space is held longer, and on
+ * Windows a file cannot be truncated or deleted while one of its regions is mapped.
+ */
+final class MappedRegions {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedRegions.class);
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private static final Method CLEANER;
+    private static final Method CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (Exception e) {
+            invokeCleaner = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (Exception e2) {
+                cleaner = null;
+                LOG.debug("Cannot unmap file regions explicitly, leaving them to the garbage collector: {}", e2.toString());
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private MappedRegions() {
+    }
+
+    /**
+     * Unmaps the region. It must not be used afterwards, any access may crash the JVM.
+     *
+     * @return {@code false} if the region is left to the garbage collector
+     */
+    static boolean unmap(MappedByteBuffer region) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, region);
+                return true;
+            }
+            if (CLEANER != null) {
+                final Object cleaner = CLEANER.invoke(region);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            LOG.debug("Could not unmap file region: {}", e.toString());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,425 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import com.graylog.splunk.output.SplunkSenderThread;
+import com.graylog.splunk.output.diagnostics.DiagnosticLog;
+import com.graylog.splunk.output.diagnostics.jfr.FlightRecorderSupport;
+import com.graylog.splunk.output.diagnostics.jfr.SplunkEnqueueEvent;
+import com.graylog.splunk.output.diagnostics.jfr.SplunkReconnectEvent;
+import com.graylog.splunk.output.diagnostics.jfr.SplunkSendEvent;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connects a Netty channel to the receiver and writes queued lines to it, either from a
+ * {@link SplunkSenderThread} or, in {@link SenderMode#EVENT_LOOP} mode, from the channel's event loop.
+ * Subclasses only choose the channel type.
+ */
+public abstract class NettySender implements Transport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettySender.class);
+    // A connected datagram channel gets an ICMP error for every packet while the receiver is down.
+    private static final DiagnosticLog.Category UNREACHABLE = DiagnosticLog.category("transport.unreachable", 1, 1);
+    private static final DiagnosticLog.Category CHANNEL_ERROR = DiagnosticLog.category("transport.error", 10, 1);
+
+    static final RejectedExecutionException QUEUE_FULL = new RejectedExecutionException("Sender queue is full");
+    static final RejectedExecutionException BUDGET_EXHAUSTED = new RejectedExecutionException("Staging byte budget exhausted");
+    private static final int WARM_UP_BYTES = 1024;
+
+    private final String hostname;
+    private final int port;
+    private final SenderMode mode;
+    private final TokenBucket pacer;
+    private final StagingQuota quota;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile SenderState state = SenderState.STARTING;
+
+    protected final LineQueue queue;
+
+    // A sender only ever has one channel open, so one event loop is enough.
+    private final EventLoopGroup workerGroup = new NioEventLoopGroup(1);
+
+    // Only used in EVENT_LOOP mode.
+    private volatile Channel channel;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    // Line held back by the pacer, only touched on the event loop.
+    private PendingLine paced;
+    // Only used by sender threads, keeps their held line across reconnects.
+    private final LineHandOver handOver = new LineHandOver();
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final Runnable pacedWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            final PendingLine pending = paced;
+            if (pending == null) {
+                // Discarded by stop().
+                return;
+            }
+            paced = null;
+            final Channel ch = channel;
+            if (ch != null && ch.isActive()) {
+                ch.write(pending.getLine()).addListener(pending);
+                drain();
+                ch.flush();
+            } else {
+                SpillFile.shared().discard(pending);
+            }
+        }
+    };
+
+    /**
+     * @param queueSize       maximum number of queued lines, a safety cap next to the byte quota
+     * @param pacer           paces the lines written to the channel, or {@code null} to write them as fast as the channel accepts them
+     * @param quota           bounds the bytes of queued and in-flight lines, or {@code null} for no byte bound
+     * @param priorityWeights one entry per priority lane, see {@link LineQueue}
+     */
+    protected NettySender(String hostname, int port, int queueSize, SenderMode mode, TokenBucket pacer, StagingQuota quota,
+                          int[] priorityWeights) {
+        this.hostname = hostname;
+        this.port = port;
+        this.mode = mode.effective();
+        this.pacer = pacer != null && pacer.isLimited() ? pacer : null;
+        this.quota = quota;
+
+        /*
+          * This internal queue shields us from causing OutputBufferProcessor
+          * timeouts for a short time without risking memory overload or
+          * loosing messages in case of temporary connection problems.
+          */
+        this.queue = new LineQueue(queueSize, priorityWeights, this.mode != SenderMode.EVENT_LOOP);
+    }
+
+    protected abstract Class<? extends Channel> channelClass();
+
+    protected void createBootstrap(final EventLoopGroup workerGroup) {
+        final SplunkReconnectEvent reconnectEvent = FlightRecorderSupport.ENABLED ? SplunkReconnectEvent.start() : null;
+        final Bootstrap bootstrap = new Bootstrap();
+        final SplunkSenderThread senderThread = mode == SenderMode.EVENT_LOOP
+                ? null
+                : new SplunkSenderThread(queue, mode.threadFactory(), pacer, handOver);
+
+        bootstrap.group(workerGroup)
+                .channel(channelClass())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
+                .remoteAddress(new InetSocketAddress(hostname, port))
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(new SimpleChannelInboundHandler<Object>() {
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
+                                received(msg);
+                            }
+
+                            @Override
+                            public void channelActive(ChannelHandlerContext ctx) throws Exception {
+                                setState(SenderState.READY);
+                                if (senderThread != null) {
+                                    senderThread.start(ctx.channel());
+                                } else {
+                                    channel = ctx.channel();
+                                    scheduleDrain();
+                                }
+                            }
+
+                            @Override
+                            public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+                                LOG.info("Channel disconnected.");
+                                setState(SenderState.DEGRADED);
+                                if (senderThread != null) {
+                                    senderThread.stop();
+                                } else {
+                                    channel = null;
+                                }
+                                scheduleReconnect(ctx.channel().eventLoop());
+                            }
+
+                            @Override
+                            public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+                                if (senderThread == null && ctx.channel().isWritable()) {
+                                    scheduleDrain();
+                                }
+                                ctx.fireChannelWritabilityChanged();
+                            }
+
+                            @Override
+                            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+                                if (cause instanceof PortUnreachableException) {
+                                    UNREACHABLE.record(hostname + ":" + port);
+                                } else {
+                                    CHANNEL_ERROR.record(hostname + ":" + port + ": " + cause);
+                                }
+                            }
+                        });
+                    }
+                });
+
+        bootstrap.connect().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (reconnectEvent != null) {
+                    reconnectEvent.finish(hostname, port, future.isSuccess());
+                }
+                if (future.isSuccess()) {
+                    LOG.info("Connected.");
+                } else {
+                    LOG.error("Connection failed: {}", future.cause().getMessage());
+                    setState(SenderState.DEGRADED);
+                    scheduleReconnect(future.channel().eventLoop());
+                }
+            }
+        });
+    }
+
+    /**
+     * Called with whatever the receiver sends back on the channel. Log data only flows one way, so by default it is ignored.
+     */
+    protected void received(Object msg) {
+    }
+
+    protected void scheduleReconnect(final EventLoopGroup workerGroup) {
+        workerGroup.schedule(new Runnable() {
+            @Override
+            public void run() {
+                LOG.info("Starting reconnect!");
+                createBootstrap(workerGroup);
+            }
+        }, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes sure a drain pass is queued on the channel's event loop. Producers racing with a running
+     * pass either have their line picked up by it or schedule the next one.
+     */
+    private void scheduleDrain() {
+        final Channel ch = channel;
+        if (ch != null && ch.isActive() && drainScheduled.compareAndSet(false, true)) {
+            ch.eventLoop().execute(drainTask);
+        }
+    }
+
+    /**
+     * Runs on the event loop: writes everything queued while the channel accepts it, then flushes once.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+
+        final Channel ch = channel;
+        if (ch == null || !ch.isActive() || paced != null || state == SenderState.STOPPED) {
+            // A line waiting for the pacer drains the rest once it is written.
+            return;
+        }
+
+        final SplunkSendEvent sendEvent = FlightRecorderSupport.ENABLED ? SplunkSendEvent.start() : null;
+        int written = 0;
+        long writtenBytes = 0;
+        ChannelFuture lastWrite = null;
+        PendingLine pending;
+        while (ch.isWritable() && (pending = queue.poll()) != null) {
+            if (pacer != null) {
+                final long delay = pacer.reserve(pending.getLine().readableBytes());
+                if (delay > 0) {
+                    paced = pending;
+                    ch.eventLoop().schedule(pacedWriteTask, delay, TimeUnit.NANOSECONDS);
+                    break;
+                }
+            }
+            writtenBytes += pending.getLine().readableBytes();
+            lastWrite = ch.write(pending.getLine()).addListener(pending);
+            written++;
+        }
+        if (written > 0) {
+            ch.flush();
+            if (sendEvent != null) {
+                sendEvent.finishOn(lastWrite, written, writtenBytes);
+            }
+        }
+    }
+
+    /**
+     * Connects on the event loop, so resolving the receiver's address and binding or connecting the
+     * socket never hold up the caller.
+     */
+    @Override
+    public void initialize() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        workerGroup.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUp();
+                createBootstrap(workerGroup);
+            }
+        });
+    }
+
+    /**
+     * Touches the pooled allocator from the event loop, so its arena and thread cache exist before the first line.
+     */
+    private static void warmUp() {
+        PooledByteBufAllocator.DEFAULT.directBuffer(WARM_UP_BYTES).release();
+    }
+
+    private void setState(SenderState newState) {
+        if (state != SenderState.STOPPED) {
+            state = newState;
+        }
+    }
+
+    @Override
+    public void stop(long timeout, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        state = SenderState.STOPPED;
+
+        // Outputs have had their flush timeout to get their lines out, what is left now is not going to be sent.
+        if (mode == SenderMode.EVENT_LOOP) {
+            // The queue has a single consumer, the event loop, which also holds the paced line.
+            discardOnEventLoop(deadline);
+        } else {
+            discardQueued();
+        }
+        handOver.close();
+        // Closes the channel without a quiet period, writes still in progress are failed.
+        workerGroup.shutdownGracefully(0, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void discardOnEventLoop(long deadline) {
+        final Future<?> discarded;
+        try {
+            discarded = workerGroup.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (paced != null) {
+                        SpillFile.shared().discard(paced);
+                        paced = null;
+                    }
+                    discardQueued();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Never started or already shut down, nothing consumes the queue anymore.
+            discardQueued();
+            return;
+        }
+        try {
+            if (!discarded.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                LOG.warn("Event loop did not give up its queued lines in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void discardQueued() {
+        PendingLine pending;
+        while ((pending = queue.poll()) != null) {
+            SpillFile.shared().discard(pending);
+        }
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line) {
+        return submit(line, quota, LOWEST_PRIORITY);
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line, int priority) {
+        return submit(line, quota, priority);
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line, StagingQuota quota, int priority) {
+        final SplunkEnqueueEvent event = FlightRecorderSupport.ENABLED ? SplunkEnqueueEvent.start() : null;
+        final int lane = queue.laneOf(priority);
+        final Promise<Void> promise = new TimedPromise(lane);
+        final PendingLine pending = reserve(line, promise, quota);
+        boolean accepted = false;
+        if (pending == null) {
+            promise.setFailure(BUDGET_EXHAUSTED);
+        } else if (!queue.offer(pending, lane)) {
+            pending.fail(QUEUE_FULL);
+        } else {
+            accepted = true;
+            if (mode == SenderMode.EVENT_LOOP) {
+                scheduleDrain();
+            }
+        }
+        if (event != null) {
+            event.finish(queue.size(), accepted);
+        }
+        return promise;
+    }
+
+    /**
+     * Reserves the line's bytes in the quota. Releases the line and returns {@code null} if they do not fit.
+     */
+    static PendingLine reserve(ByteBuf line, Promise<Void> promise, StagingQuota quota) {
+        if (quota == null) {
+            return new PendingLine(line, promise);
+        }
+        final int bytes = line.readableBytes();
+        if (!quota.tryReserve(bytes)) {
+            line.release();
+            return null;
+        }
+        return new PendingLine(line, promise, quota, bytes);
+    }
+
+    @Override
+    public SenderState getState() {
+        return state;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueDepth(int priority) {
+        return queue.size(priority);
+    }
+
+}
@@ -0,0 +1,36 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+/**
+ * What to do with a line that does not fit into one datagram.
+ */
+public enum OversizePolicy {
+    /**
+     * Cut the line at a character boundary and end it with {@code [TRUNCATED]}.
+     */
+    TRUNCATE,
+    /**
+     * Do not send the line at all.
+     */
+    DROP,
+    /**
+     * Split the line into datagrams prefixed with {@code #frag:<id>:<index>/<count> }, which
+     * the {@code LossReceiver} test tool reassembles.
+     */
+    FRAGMENT
+}
@@ -0,0 +1,97 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * An encoded line waiting in a sender queue, together with the promise that is completed
+ * once the line has been written to the channel.
+ */
+public class PendingLine implements ChannelFutureListener {
+
+    private final ByteBuf line;
+    private final Promise<Void> promise;
+    private final StagingQuota quota;
+    private final int reserved;
+
+    public PendingLine(ByteBuf line, Promise<Void> promise) {
+        this(line, promise, null, 0);
+    }
+
+    /**
+     * @param reserved bytes reserved for the line in the quota, given back once it is written or given up
+     */
+    public PendingLine(ByteBuf line, Promise<Void> promise, StagingQuota quota, int reserved) {
+        this.line = line;
+        this.promise = promise;
+        this.quota = quota;
+        this.reserved = reserved;
+    }
+
+    public ByteBuf getLine() {
+        return line;
+    }
+
+    /**
+     * Completes the promise with the outcome of the channel write.
+     */
+    @Override
+    public void operationComplete(ChannelFuture future) {
+        releaseQuota();
+        if (promise == null) {
+            return;
+        }
+        if (future.isSuccess()) {
+            promise.trySuccess(null);
+        } else {
+            promise.tryFailure(future.cause());
+        }
+    }
+
+    /**
+     * Completes a line that was written without a channel, such as to a file.
+     */
+    public void written() {
+        releaseQuota();
+        line.release();
+        if (promise != null) {
+            promise.trySuccess(null);
+        }
+    }
+
+    /**
+     * Gives up on a line that was never written.
+     */
+    public void fail(Throwable cause) {
+        releaseQuota();
+        line.release();
+        if (promise != null) {
+            promise.tryFailure(cause);
+        }
+    }
+
+    private void releaseQuota() {
+        if (quota != null) {
+            quota.release(reserved);
+        }
+    }
+
+}
@@ -16,15 +16,49 @@
  */
 package com.graylog.splunk.output.senders;
 
-import org.graylog2.plugin.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+
+import java.util.concurrent.TimeUnit;
 
 public interface Sender {
 
+    /**
+     * Starts connecting in the background and returns right away. Lines submitted before the connection
+     * is up are queued. Calling it again has no effect.
+     */
     void initialize();
-    void stop();
 
-    void send(Message message);
+    /**
+     * Stops the sender, waiting at most the given time for it to give up its queue and connection. Lines
+     * still queued are spilled or dropped, see {@link SpillFile}.
+     */
+    void stop(long timeout, TimeUnit unit);
+
+    /**
+     * Priority of lines submitted without one: the lowest lane the sender has.
+     */
+    int LOWEST_PRIORITY = Integer.MAX_VALUE;
+
+    /**
+     * Queues one encoded event without blocking, in the lowest priority lane. The sender takes ownership of the buffer.
+     *
+     * @return a future completed when the line has been written to the channel, or failed
+     *         right away if the sender queue is full
+     */
+    Future<Void> submit(ByteBuf line);
+
+    /**
+     * Like {@link #submit(ByteBuf)}, queued in a priority lane. Lane 0 is always sent first, priorities past
+     * the last lane of the sender go to its last lane.
+     */
+    Future<Void> submit(ByteBuf line, int priority);
+
+    SenderState getState();
 
-    boolean isInitialized();
+    /**
+     * Number of lines waiting in the sender queue.
+     */
+    int getQueueDepth();
 
 }
@@ -0,0 +1,87 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * How the loop that moves queued lines to the channel is run.
+ */
+public enum SenderMode {
+    /**
+     * One dedicated platform thread per connection.
+     */
+    PLATFORM_THREAD,
+    /**
+     * One virtual thread per connection. Needs JDK 21 or newer and falls back to
+     * {@link #PLATFORM_THREAD} on older runtimes.
+     */
+    VIRTUAL_THREAD,
+    /**
+     * No sender thread at all: producers put lines into a MPSC queue and the channel's event
+     * loop drains it, with one flush per drain pass.
+     */
+    EVENT_LOOP;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SenderMode.class);
+
+    private static final ThreadFactory PLATFORM_THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r);
+        }
+    };
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = lookupVirtualThreadFactory();
+
+    public static boolean virtualThreadsSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * The mode that is actually used on this runtime.
+     */
+    public SenderMode effective() {
+        if (this == VIRTUAL_THREAD && !virtualThreadsSupported()) {
+            LOG.warn("Virtual threads are not available on Java {}, using platform sender threads.",
+                    System.getProperty("java.version"));
+            return PLATFORM_THREAD;
+        }
+        return this;
+    }
+
+    public ThreadFactory threadFactory() {
+        return this == VIRTUAL_THREAD && virtualThreadsSupported() ? VIRTUAL_THREAD_FACTORY : PLATFORM_THREAD_FACTORY;
+    }
+
+    /**
+     * {@code Thread.ofVirtual().factory()}, looked up reflectively because the plugin is built for Java 8.
+     */
+    private static ThreadFactory lookupVirtualThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            return null;
+        }
+    }
+}
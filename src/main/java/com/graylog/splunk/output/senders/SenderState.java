@@ -0,0 +1,53 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+/**
+ * Where a sender is in its life. Lines are accepted in every state but {@link #STOPPED} and are
+ * queued until there is a connection.
+ */
+public enum SenderState {
+    /**
+     * Connecting for the first time.
+     */
+    STARTING,
+    /**
+     * Connected.
+     */
+    READY,
+    /**
+     * Connection lost or never established, reconnecting.
+     */
+    DEGRADED,
+    /**
+     * Stopped, lines are failed.
+     */
+    STOPPED;
+
+    /**
+     * State of several senders seen as one: ready only if all are, stopped only if all are.
+     */
+    public static SenderState combine(SenderState a, SenderState b) {
+        if (a == b) {
+            return a;
+        }
+        if (a == DEGRADED || b == DEGRADED || a == STOPPED || b == STOPPED) {
+            return DEGRADED;
+        }
+        return STARTING;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import com.graylog.splunk.output.encoders.SplunkEscaper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.Future;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefixes every line with {@code #<sender id>:<sequence number> } so a receiver can count lost and
+ * reordered datagrams, see the {@code LossReceiver} test tool.
+ *
+ * The sender ID is random per instance, so a restarted output, whose sequence starts at 0 again, is
+ * seen as a new sender. An output has one instance per sender lane, so each lane is a sender of its
+ * own at the receiver, and gaps and reordering are counted per lane, not per output. Numbers are
+ * handed out in queue order, so lines of a higher priority lane overtaking others show up as
+ * reordering.
+ *
+ * It numbers what it is given, so it goes behind a {@link SizeLimitedSender}: dropped lines then take
+ * no number and are not mistaken for loss, and every fragment is numbered as the datagram it is.
+ */
+public class SequencedSender implements Sender {
+
+    /**
+     * Longest prefix added to a line: {@code #}, 8 hex digits, {@code :}, 19 digits and a space.
+     */
+    public static final int MAX_PREFIX_LENGTH = 1 + 8 + 1 + 19 + 1;
+
+    private final Sender sender;
+    private final byte[] prefix;
+    private long sequence = 0;
+
+    public SequencedSender(Sender sender) {
+        this.sender = sender;
+        this.prefix = ("#" + Integer.toHexString(ThreadLocalRandom.current().nextInt()) + ":").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void initialize() {
+        sender.initialize();
+    }
+
+    @Override
+    public void stop(long timeout, TimeUnit unit) {
+        sender.stop(timeout, unit);
+    }
+
+    @Override
+    public synchronized Future<Void> submit(ByteBuf line) {
+        return sender.submit(sequenced(line));
+    }
+
+    @Override
+    public synchronized Future<Void> submit(ByteBuf line, int priority) {
+        return sender.submit(sequenced(line), priority);
+    }
+
+    private ByteBuf sequenced(ByteBuf line) {
+        final ByteBuf header = PooledByteBufAllocator.DEFAULT.directBuffer(MAX_PREFIX_LENGTH);
+        header.writeBytes(prefix);
+        SplunkEscaper.writeLong(header, sequence++);
+        header.writeByte(' ');
+        // The composite takes over both buffers and releases them together.
+        return Unpooled.wrappedBuffer(header, line);
+    }
+
+    @Override
+    public SenderState getState() {
+        return sender.getState();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return sender.getQueueDepth();
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plugin-wide registry of transports, so outputs sending to the same receiver share one socket and
+ * event loop instead of opening their own, and outputs writing to the same files share one writer.
+ *
+ * Transports are reference counted: the first output that acquires a key opens it, the last one that
+ * stops closes it. Closing happens outside the registry's lock, since a file writer may take seconds to
+ * finish; the key stays taken until then, and only outputs acquiring that key wait for it. Each output
+ * gets its own {@link Lease}, which accounts the output's lines against the output's staging quota and
+ * counts them separately. Transports to the same receiver also share
+ * one pacer, so the configured rate is what the receiver sees across all outputs.
+ */
+public class SharedTransports {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedTransports.class);
+
+    private final Map<Object, Entry> transports = new HashMap<>();
+
+    /**
+     * Opens the network transport for the key, or joins it if it is already open.
+     */
+    public synchronized Lease acquire(TransportKey key, StagingQuota quota) {
+        Entry transport = awaitOpen(key);
+        if (transport == null) {
+            final TokenBucket pacer = pacerFor(key);
+            transport = open(key, key.open(pacer), pacer);
+        }
+        return join(transport, quota);
+    }
+
+    /**
+     * Opens the file sink for the key, or joins it if it is already open. Outputs writing to the same
+     * files always share the sink, so every file has a single writer.
+     */
+    public synchronized Lease acquire(FileSinkKey key, StagingQuota quota) {
+        Entry transport = awaitOpen(key);
+        if (transport == null) {
+            transport = open(key, key.open(), null);
+        }
+        return join(transport, quota);
+    }
+
+    /**
+     * Joins the transport open for the key, or opens the given one for it, for transports made elsewhere.
+     */
+    synchronized Lease acquire(Object key, Transport sender, StagingQuota quota) {
+        Entry transport = awaitOpen(key);
+        if (transport == null) {
+            transport = open(key, sender, null);
+        }
+        return join(transport, quota);
+    }
+
+    /**
+     * The open transport for the key, if any, after waiting for one that is still closing.
+     */
+    private Entry awaitOpen(Object key) {
+        boolean interrupted = false;
+        Entry transport = transports.get(key);
+        while (transport != null && transport.closing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Closing is bounded by the transport's stop timeout.
+                interrupted = true;
+            }
+            transport = transports.get(key);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return transport;
+    }
+
+    private Entry open(Object key, Transport sender, TokenBucket pacer) {
+        final Entry transport = new Entry(key, sender, pacer);
+        transports.put(key, transport);
+        LOG.info("Opened transport {}.", key);
+        return transport;
+    }
+
+    private Lease join(Entry transport, StagingQuota quota) {
+        transport.references++;
+        return new Lease(transport, quota);
+    }
+
+    private TokenBucket pacerFor(TransportKey key) {
+        for (Entry transport : transports.values()) {
+            if (!transport.closing && transport.key instanceof TransportKey && ((TransportKey) transport.key).sameReceiver(key)) {
+                return transport.pacer;
+            }
+        }
+        return key.newPacer();
+    }
+
+    private void release(Entry transport, long timeout, TimeUnit unit) {
+        synchronized (this) {
+            if (--transport.references > 0) {
+                return;
+            }
+            // Stopping waits for a file writer to close its file, the key stays taken until then.
+            transport.closing = true;
+        }
+        try {
+            transport.sender.stop(timeout, unit);
+        } finally {
+            synchronized (this) {
+                transports.remove(transport.key);
+                notifyAll();
+            }
+        }
+        LOG.info("Closed transport {}.", transport.key);
+    }
+
+    /**
+     * @return number of open transports
+     */
+    public synchronized int size() {
+        return transports.size();
+    }
+
+    private static class Entry {
+        private final Object key;
+        private final Transport sender;
+        private final TokenBucket pacer;
+        private int references;
+        private boolean closing;
+
+        private Entry(Object key, Transport sender, TokenBucket pacer) {
+            this.key = key;
+            this.sender = sender;
+            this.pacer = pacer;
+        }
+    }
+
+    /**
+     * One output's use of a shared transport. Stopping the lease releases the transport, lines of other
+     * outputs are not affected.
+     */
+    public class Lease implements Sender {
+
+        private final Entry transport;
+        private final StagingQuota quota;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean stopped = new AtomicBoolean();
+
+        private final FutureListener<Void> completed = new FutureListener<Void>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                pending.decrementAndGet();
+            }
+        };
+
+        private Lease(Entry transport, StagingQuota quota) {
+            this.transport = transport;
+            this.quota = quota;
+        }
+
+        @Override
+        public void initialize() {
+            transport.sender.initialize();
+        }
+
+        /**
+         * Only the last output using the transport stops it, within the given time.
+         */
+        @Override
+        public void stop(long timeout, TimeUnit unit) {
+            if (stopped.compareAndSet(false, true)) {
+                release(transport, timeout, unit);
+            }
+        }
+
+        @Override
+        public Future<Void> submit(ByteBuf line) {
+            return submit(line, LOWEST_PRIORITY);
+        }
+
+        @Override
+        public Future<Void> submit(ByteBuf line, int priority) {
+            pending.incrementAndGet();
+            return transport.sender.submit(line, quota, priority).addListener(completed);
+        }
+
+        @Override
+        public SenderState getState() {
+            return stopped.get() ? SenderState.STOPPED : transport.sender.getState();
+        }
+
+        /**
+         * Number of this output's submitted lines that are not yet written.
+         */
+        @Override
+        public int getQueueDepth() {
+            return pending.get();
+        }
+
+        /**
+         * Lines of all outputs waiting in the shared queue.
+         */
+        public int getSharedQueueDepth() {
+            return transport.sender.getQueueDepth();
+        }
+
+        /**
+         * Lines of all outputs waiting in one priority lane of the shared queue.
+         */
+        public int getSharedQueueDepth(int priority) {
+            return transport.sender.getQueueDepth(priority);
+        }
+
+        /**
+         * Number of outputs using the transport.
+         */
+        public int getSharedBy() {
+            synchronized (SharedTransports.this) {
+                return transport.references;
+            }
+        }
+
+        /**
+         * @return the pacer shared by transports to the same receiver, {@code null} for file sinks
+         */
+        public TokenBucket getPacer() {
+            return transport.pacer;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import com.codahale.metrics.Counter;
+import com.graylog.splunk.output.diagnostics.DiagnosticLog;
+import com.graylog.splunk.output.encoders.SplunkEscaper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps every datagram within a maximum size, applying an {@link OversizePolicy} to lines that are larger.
+ *
+ * Lines are checked by their encoded length only; nothing is encoded again. Lines that fit are passed
+ * through untouched.
+ *
+ * Fragment IDs start at a random 64-bit value per instance, so fragments of outputs that share one
+ * socket do not collide at the receiver. A {@link SequencedSender}, if any, goes behind this one, so
+ * the size decision is made before a line is numbered; its prefix must then be left out of the maximum
+ * size.
+ */
+public class SizeLimitedSender implements Sender {
+
+    /**
+     * Largest UDP payload over IPv4.
+     */
+    public static final int MAX_UDP_PAYLOAD = 65507;
+
+    private static final DiagnosticLog.Category DROPPED = DiagnosticLog.category("udp.oversizeDropped", 10, 100);
+
+    private static final RejectedExecutionException OVERSIZED = new RejectedExecutionException("Line exceeds the maximum datagram size");
+
+    private static final byte[] TRUNCATED = " [TRUNCATED]\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FRAGMENT = "#frag:".getBytes(StandardCharsets.US_ASCII);
+    // "#frag:" + id + ":" + index + "/" + count + " " with up to 16 hex and two 10 digit numbers
+    private static final int FRAGMENT_HEADER_MAX = FRAGMENT.length + 16 + 1 + 10 + 1 + 10 + 1;
+
+    private final Sender sender;
+    private final int maxSize;
+    private final OversizePolicy policy;
+    private final Counter oversized;
+    private final AtomicLong fragmentIds = new AtomicLong(ThreadLocalRandom.current().nextLong());
+
+    /**
+     * @param oversized counts the lines the policy was applied to
+     */
+    public SizeLimitedSender(Sender sender, int maxSize, OversizePolicy policy, Counter oversized) {
+        this.sender = sender;
+        this.maxSize = Math.max(FRAGMENT_HEADER_MAX + TRUNCATED.length + 1, maxSize);
+        this.policy = policy;
+        this.oversized = oversized;
+    }
+
+    @Override
+    public void initialize() {
+        sender.initialize();
+    }
+
+    @Override
+    public void stop(long timeout, TimeUnit unit) {
+        sender.stop(timeout, unit);
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line) {
+        return submit(line, LOWEST_PRIORITY);
+    }
+
+    @Override
+    public Future<Void> submit(ByteBuf line, int priority) {
+        if (line.readableBytes() <= maxSize) {
+            return sender.submit(line, priority);
+        }
+
+        oversized.inc();
+        switch (policy) {
+            case DROP:
+                DROPPED.record("line of " + line.readableBytes() + " bytes exceeds " + maxSize);
+                line.release();
+                return ImmediateEventExecutor.INSTANCE.newFailedFuture(OVERSIZED);
+            case FRAGMENT:
+                return fragment(line, priority);
+            case TRUNCATE:
+            default:
+                return sender.submit(truncate(line), priority);
+        }
+    }
+
+    private ByteBuf truncate(ByteBuf line) {
+        int cut = line.readerIndex() + maxSize - TRUNCATED.length;
+        // Do not cut a UTF-8 sequence in half.
+        while (cut > line.readerIndex() && (line.getByte(cut) & 0xC0) == 0x80) {
+            cut--;
+        }
+        final ByteBuf kept = line.retainedSlice(line.readerIndex(), cut - line.readerIndex());
+        line.release();
+        return Unpooled.wrappedBuffer(kept, Unpooled.wrappedBuffer(TRUNCATED));
+    }
+
+    private Future<Void> fragment(ByteBuf line, int priority) {
+        final int payload = maxSize - FRAGMENT_HEADER_MAX;
+        final int count = (line.readableBytes() + payload - 1) / payload;
+        final long id = fragmentIds.incrementAndGet();
+
+        final Promise<Void> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        final AtomicInteger remaining = new AtomicInteger(count);
+        // The line is sent once all fragments are, and failed as soon as one of them fails.
+        final FutureListener<Void> fragmentListener = new FutureListener<Void>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                } else if (remaining.decrementAndGet() == 0) {
+                    promise.trySuccess(null);
+                }
+            }
+        };
+
+        for (int i = 0; i < count; i++) {
+            final int offset = line.readerIndex() + i * payload;
+            final int length = Math.min(payload, line.writerIndex() - offset);
+
+            final ByteBuf header = PooledByteBufAllocator.DEFAULT.directBuffer(FRAGMENT_HEADER_MAX);
+            header.writeBytes(FRAGMENT);
+            SplunkEscaper.writeUtf8(header, Long.toHexString(id));
+            header.writeByte(':');
+            SplunkEscaper.writeLong(header, i);
+            header.writeByte('/');
+            SplunkEscaper.writeLong(header, count);
+            header.writeByte(' ');
+
+            sender.submit(Unpooled.wrappedBuffer(header, line.retainedSlice(offset, length)), priority).addListener(fragmentListener);
+        }
+        line.release();
+
+        return promise;
+    }
+
+    @Override
+    public SenderState getState() {
+        return sender.getState();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return sender.getQueueDepth();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Where lines end up that a stopping sender could not write anymore, shared by all outputs of this node.
+ *
+ * If the {@value #DIRECTORY_PROPERTY} system property names a directory, such lines are appended there
+ * to a file per node start, as they would have been sent, so they can be replayed. Otherwise they are
+ * dropped. Either way their promise is failed with {@link #SPILLED} or {@link #DROPPED}, so outputs can
+ * count them.
+ */
+public class SpillFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillFile.class);
+
+    public static final String DIRECTORY_PROPERTY = "splunk.output.spill.dir";
+
+    public static final IllegalStateException SPILLED = new IllegalStateException("Sender stopped, line spilled to disk");
+    public static final IllegalStateException DROPPED = new IllegalStateException("Sender stopped, line dropped");
+
+    private static final SpillFile SHARED = new SpillFile(System.getProperty(DIRECTORY_PROPERTY));
+
+    private final File file;
+    private FileChannel channel;
+
+    SpillFile(String directory) {
+        this.file = directory == null || directory.isEmpty() ? null : new File(directory,
+                "splunk-output-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".spill");
+    }
+
+    public static SpillFile shared() {
+        return SHARED;
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Spills or drops a line that will not be written, and fails its promise.
+     */
+    public void discard(PendingLine pending) {
+        pending.fail(file != null && append(pending.getLine()) ? SPILLED : DROPPED);
+    }
+
+    private synchronized boolean append(ByteBuf line) {
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                LOG.info("Spilling unsent lines to {}.", file);
+            }
+            int index = line.readerIndex();
+            final int end = line.writerIndex();
+            while (index < end) {
+                index += line.getBytes(index, channel, end - index);
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not spill line to {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+}
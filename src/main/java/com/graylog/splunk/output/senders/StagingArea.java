@@ -0,0 +1,77 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budget for encoded lines that are queued or being written, shared by all outputs of this node.
+ *
+ * Lines live in direct buffers of Netty's pooled arena allocator, so staging does not add to heap
+ * pressure however large the lines are. This class only accounts for their size: every output takes
+ * a {@link StagingQuota} and reserves each line against both its quota and the shared budget.
+ *
+ * The shared budget is set with the {@value #BUDGET_PROPERTY} system property, in bytes, and defaults
+ * to a quarter of the maximum direct memory.
+ */
+public class StagingArea {
+
+    public static final String BUDGET_PROPERTY = "splunk.output.staging.bytes";
+
+    private static final StagingArea SHARED = new StagingArea(
+            Long.getLong(BUDGET_PROPERTY, PlatformDependent.maxDirectMemory() / 4));
+
+    private final long capacity;
+    private final AtomicLong used = new AtomicLong();
+
+    StagingArea(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public static StagingArea shared() {
+        return SHARED;
+    }
+
+    public StagingQuota newQuota(long bytes) {
+        return new StagingQuota(this, Math.min(bytes, capacity));
+    }
+
+    boolean tryReserve(long bytes) {
+        long current;
+        do {
+            current = used.get();
+            if (current + bytes > capacity) {
+                return false;
+            }
+        } while (!used.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    void release(long bytes) {
+        used.addAndGet(-bytes);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+}
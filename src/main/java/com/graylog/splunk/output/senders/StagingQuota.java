@@ -0,0 +1,66 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The share of the {@link StagingArea} one output may fill with queued and in-flight lines.
+ */
+public class StagingQuota {
+
+    private final StagingArea area;
+    private final long capacity;
+    private final AtomicLong used = new AtomicLong();
+
+    StagingQuota(StagingArea area, long capacity) {
+        this.area = area;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return {@code false} if the line does not fit into this quota or into the shared budget
+     */
+    public boolean tryReserve(int bytes) {
+        if (used.addAndGet(bytes) > capacity) {
+            used.addAndGet(-bytes);
+            return false;
+        }
+        if (!area.tryReserve(bytes)) {
+            used.addAndGet(-bytes);
+            return false;
+        }
+        return true;
+    }
+
+    public void release(int bytes) {
+        used.addAndGet(-bytes);
+        area.release(bytes);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public StagingArea getArea() {
+        return area;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+/**
+ * Completion of a submitted line that remembers when it was submitted, so listeners can tell how long
+ * the line waited in the queue and on the wire.
+ */
+public class TimedPromise extends DefaultPromise<Void> {
+
+    private final long submittedNanos = System.nanoTime();
+    private final int priority;
+
+    /**
+     * @param priority the priority lane the line was queued in
+     */
+    public TimedPromise(int priority) {
+        super(ImmediateEventExecutor.INSTANCE);
+        this.priority = priority;
+    }
+
+    public long getSubmittedNanos() {
+        return submittedNanos;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    protected void checkDeadLock() {
+        // Listeners run on whichever thread completes the promise, so waiting on it never blocks that thread.
+    }
+}
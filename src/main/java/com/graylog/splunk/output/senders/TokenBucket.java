@@ -0,0 +1,141 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces datagrams to a packets/s and a bytes/s rate, allowing bursts of up to {@code burstMillis} worth of traffic.
+ *
+ * Callers reserve capacity for every datagram and wait for the returned delay before sending it. In
+ * adaptive mode the rates are lowered when the receiver reports loss and raised again slowly when it
+ * does not, but never above the configured rates.
+ */
+public class TokenBucket {
+
+    private static final double LOSS_THRESHOLD = 0.001;
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final double INCREASE_STEP = 0.05;
+    private static final double MIN_FRACTION = 0.05;
+
+    private final long maxPacketsPerSecond;
+    private final long maxBytesPerSecond;
+    private final long burstNanos;
+    private final boolean adaptive;
+
+    private double packetsPerSecond;
+    private double bytesPerSecond;
+    private double packetTokens;
+    private double byteTokens;
+    private long lastRefill;
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * @param packetsPerSecond maximum packet rate, 0 for no limit
+     * @param bytesPerSecond   maximum byte rate, 0 for no limit
+     * @param burstMillis      how much traffic, in milliseconds of the rate, may be sent at once
+     * @param adaptive         whether loss reports lower the rate
+     */
+    public TokenBucket(long packetsPerSecond, long bytesPerSecond, long burstMillis, boolean adaptive) {
+        this.maxPacketsPerSecond = Math.max(0, packetsPerSecond);
+        this.maxBytesPerSecond = Math.max(0, bytesPerSecond);
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, burstMillis));
+        this.adaptive = adaptive;
+
+        this.packetsPerSecond = maxPacketsPerSecond;
+        this.bytesPerSecond = maxBytesPerSecond;
+        this.packetTokens = capacity(this.packetsPerSecond);
+        this.byteTokens = capacity(this.bytesPerSecond);
+        this.lastRefill = System.nanoTime();
+    }
+
+    public boolean isLimited() {
+        return maxPacketsPerSecond > 0 || maxBytesPerSecond > 0;
+    }
+
+    /**
+     * Takes the tokens for one datagram and returns how long, in nanoseconds, the caller has to wait before sending it.
+     */
+    public synchronized long reserve(int bytes) {
+        refill(System.nanoTime());
+
+        long delay = 0;
+        if (packetsPerSecond > 0) {
+            packetTokens -= 1;
+            delay = Math.max(delay, nanosUntilPositive(packetTokens, packetsPerSecond));
+        }
+        if (bytesPerSecond > 0) {
+            byteTokens -= bytes;
+            delay = Math.max(delay, nanosUntilPositive(byteTokens, bytesPerSecond));
+        }
+        if (delay > 0) {
+            waitNanos.addAndGet(delay);
+        }
+        return delay;
+    }
+
+    /**
+     * Adjusts the rates to the fraction of datagrams the receiver reports as lost. Ignored unless adaptive.
+     */
+    public synchronized void onLossReport(double lossRatio) {
+        if (!adaptive) {
+            return;
+        }
+        refill(System.nanoTime());
+        if (lossRatio > LOSS_THRESHOLD) {
+            packetsPerSecond = Math.max(packetsPerSecond * DECREASE_FACTOR, maxPacketsPerSecond * MIN_FRACTION);
+            bytesPerSecond = Math.max(bytesPerSecond * DECREASE_FACTOR, maxBytesPerSecond * MIN_FRACTION);
+        } else {
+            packetsPerSecond = Math.min(packetsPerSecond + maxPacketsPerSecond * INCREASE_STEP, maxPacketsPerSecond);
+            bytesPerSecond = Math.min(bytesPerSecond + maxBytesPerSecond * INCREASE_STEP, maxBytesPerSecond);
+        }
+        packetTokens = Math.min(packetTokens, capacity(packetsPerSecond));
+        byteTokens = Math.min(byteTokens, capacity(bytesPerSecond));
+    }
+
+    public synchronized double getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    public synchronized double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Total time senders were told to wait, in nanoseconds.
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    private void refill(long now) {
+        final double elapsedSeconds = (now - lastRefill) / 1e9;
+        lastRefill = now;
+        packetTokens = Math.min(packetTokens + elapsedSeconds * packetsPerSecond, capacity(packetsPerSecond));
+        byteTokens = Math.min(byteTokens + elapsedSeconds * bytesPerSecond, capacity(bytesPerSecond));
+    }
+
+    private double capacity(double perSecond) {
+        return perSecond * burstNanos / 1e9;
+    }
+
+    private static long nanosUntilPositive(double tokens, double perSecond) {
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / perSecond * 1e9);
+    }
+}
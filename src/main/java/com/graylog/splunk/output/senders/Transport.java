@@ -0,0 +1,37 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+
+/**
+ * A sender that several outputs can share through {@link SharedTransports}, each accounting its lines
+ * against its own staging quota.
+ */
+public interface Transport extends Sender {
+
+    /**
+     * Like {@link #submit(ByteBuf, int)}, accounting the line's bytes against the given quota instead of the sender's own.
+     */
+    Future<Void> submit(ByteBuf line, StagingQuota quota, int priority);
+
+    /**
+     * Number of lines waiting in one priority lane.
+     */
+    int getQueueDepth(int priority);
+}
@@ -0,0 +1,114 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Everything that makes two transports interchangeable: outputs with equal keys can share one.
+ */
+public final class TransportKey {
+
+    private final boolean tcp;
+    private final String hostname;
+    private final int port;
+    private final int lane;
+    private final int queueSize;
+    private final SenderMode mode;
+    private final int packetsPerSecond;
+    private final int bytesPerSecond;
+    private final int burstMillis;
+    private final boolean adaptivePacing;
+    private final int[] priorityWeights;
+    private final String owner;
+
+    /**
+     * @param lane            lane index, outputs with several lanes use one transport per lane
+     * @param priorityWeights weights of the priority lanes in the transport's queue, see {@link LineQueue}
+     * @param owner           {@code null} to share with any output, or an identity that only outputs with the same identity share
+     */
+    public TransportKey(boolean tcp, String hostname, int port, int lane, int queueSize, SenderMode mode,
+                        int packetsPerSecond, int bytesPerSecond, int burstMillis, boolean adaptivePacing,
+                        int[] priorityWeights, String owner) {
+        this.tcp = tcp;
+        this.hostname = hostname;
+        this.port = port;
+        this.lane = lane;
+        this.queueSize = queueSize;
+        this.mode = mode;
+        // Pacing does not apply to TCP, so it must not split TCP transports.
+        this.packetsPerSecond = tcp ? 0 : packetsPerSecond;
+        this.bytesPerSecond = tcp ? 0 : bytesPerSecond;
+        this.burstMillis = tcp ? 0 : burstMillis;
+        this.adaptivePacing = !tcp && adaptivePacing;
+        this.priorityWeights = priorityWeights.clone();
+        this.owner = owner;
+    }
+
+    /**
+     * Whether both keys send to the same receiver with the same pacing, regardless of the lane.
+     */
+    boolean sameReceiver(TransportKey other) {
+        return tcp == other.tcp
+                && port == other.port
+                && packetsPerSecond == other.packetsPerSecond
+                && bytesPerSecond == other.bytesPerSecond
+                && burstMillis == other.burstMillis
+                && adaptivePacing == other.adaptivePacing
+                && hostname.equals(other.hostname)
+                && Objects.equals(owner, other.owner);
+    }
+
+    TokenBucket newPacer() {
+        return new TokenBucket(packetsPerSecond, bytesPerSecond, burstMillis, adaptivePacing);
+    }
+
+    /**
+     * Creates the transport. Lines are accounted against the quota of the output that submits them.
+     */
+    NettySender open(TokenBucket pacer) {
+        if (tcp) {
+            return new TCPSender(hostname, port, queueSize, mode, null, priorityWeights);
+        }
+        return new UDPSender(hostname, port, queueSize, mode, pacer, null, priorityWeights);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TransportKey)) {
+            return false;
+        }
+        final TransportKey that = (TransportKey) o;
+        return sameReceiver(that) && lane == that.lane && queueSize == that.queueSize && mode == that.mode
+                && Arrays.equals(priorityWeights, that.priorityWeights);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tcp, hostname, port, lane, queueSize, mode, packetsPerSecond, bytesPerSecond,
+                burstMillis, adaptivePacing, Arrays.hashCode(priorityWeights), owner);
+    }
+
+    @Override
+    public String toString() {
+        return (tcp ? "TCP " : "UDP ") + hostname + ":" + port + " lane " + lane;
+    }
+}
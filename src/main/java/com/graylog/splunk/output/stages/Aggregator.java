@@ -0,0 +1,219 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.stages;
+
+import com.graylog.splunk.output.encoders.Encoder;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls messages up per group and window instead of sending them one by one.
+ *
+ * The group-by and aggregated fields are read through {@link Encoder#fields(Message)}, so they are the
+ * fields the active encoder sees, and messages the encoder would not send are not aggregated either.
+ * Groups are keyed by a 64-bit hash of the group-by values in a primitive-keyed map. When a window
+ * closes, one message is built per group with {@link Encoder#message}, stamped with the start of the
+ * window and holding {@code window=60s key=value ... count=n field_sum=x field_min=y field_max=z}.
+ * Non-numeric values of the aggregated fields are skipped.
+ */
+public class Aggregator {
+
+    private static final String ROLLUP = "rollup";
+
+    private final Encoder encoder;
+    private final String[] groupBy;
+    private final String[] fields;
+    private final String[][] fieldNames;
+    private final long windowNanos;
+    private final String window;
+
+    private LongObjectMap<Group> groups = new LongObjectHashMap<>();
+    private long windowStartMillis;
+    private long windowEnd;
+
+    /**
+     * @param encoder       encoder whose fields are aggregated and which encodes the rollups
+     * @param groupBy       fields whose values form a group
+     * @param fields        numeric fields to sum, min and max per group
+     * @param windowSeconds length of one window
+     */
+    public Aggregator(Encoder encoder, List<String> groupBy, List<String> fields, long windowSeconds) {
+        this.encoder = encoder;
+        this.groupBy = groupBy.toArray(new String[groupBy.size()]);
+        this.fields = fields.toArray(new String[fields.size()]);
+        this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+        this.window = windowSeconds + "s";
+
+        this.fieldNames = new String[this.fields.length][];
+        for (int i = 0; i < this.fields.length; i++) {
+            fieldNames[i] = new String[]{this.fields[i] + "_sum", this.fields[i] + "_min", this.fields[i] + "_max"};
+        }
+
+        this.windowStartMillis = System.currentTimeMillis();
+        this.windowEnd = System.nanoTime() + windowNanos;
+    }
+
+    /**
+     * @return {@code false} if the encoder would not send the message, which is then not aggregated
+     */
+    public boolean add(Message message) {
+        final Map<String, Object> values = encoder.fields(message);
+        if (values == null) {
+            return false;
+        }
+
+        long h = Hash64.seed();
+        for (String field : groupBy) {
+            h = Hash64.combine(h, values.get(field));
+        }
+        final long key = Hash64.mix(h);
+
+        synchronized (this) {
+            Group group = groups.get(key);
+            if (group == null) {
+                // A 64-bit hash collision would merge two groups, which is accepted.
+                final String[] groupValues = new String[groupBy.length];
+                for (int i = 0; i < groupBy.length; i++) {
+                    groupValues[i] = String.valueOf(values.get(groupBy[i]));
+                }
+                group = new Group(groupValues, message.getSource(), fields.length);
+                groups.put(key, group);
+            }
+
+            group.count++;
+            for (int i = 0; i < fields.length; i++) {
+                final double value = numericValue(values.get(fields[i]));
+                if (!Double.isNaN(value)) {
+                    group.add(i, value);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes the window if it is over.
+     *
+     * @return one rollup per group of the closed window, or {@code null} if the window is still open
+     */
+    public synchronized List<Message> rotateIfDue() {
+        if (System.nanoTime() - windowEnd < 0) {
+            return null;
+        }
+        return flush();
+    }
+
+    /**
+     * Closes the current window regardless of its age.
+     */
+    public synchronized List<Message> flush() {
+        final List<Message> rollups = new ArrayList<>(groups.size());
+        final DateTime start = new DateTime(windowStartMillis);
+        for (Group group : groups.values()) {
+            rollups.add(rollup(start, group));
+        }
+
+        groups = new LongObjectHashMap<>(Math.max(8, groups.size()));
+        windowStartMillis = System.currentTimeMillis();
+        windowEnd = System.nanoTime() + windowNanos;
+        return rollups;
+    }
+
+    /**
+     * How often the window has to be checked to close it on time, in milliseconds.
+     */
+    public long checkIntervalMillis() {
+        return Math.max(1L, Math.min(1000L, TimeUnit.NANOSECONDS.toMillis(windowNanos) / 10));
+    }
+
+    private Message rollup(DateTime start, Group group) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("window", window);
+        for (int i = 0; i < groupBy.length; i++) {
+            values.put(groupBy[i], group.values[i]);
+        }
+        values.put("count", group.count);
+        for (int i = 0; i < fields.length; i++) {
+            if (group.seen[i] == 0) {
+                continue;
+            }
+            values.put(fieldNames[i][0], number(group.sums[i]));
+            values.put(fieldNames[i][1], number(group.mins[i]));
+            values.put(fieldNames[i][2], number(group.maxs[i]));
+        }
+        return encoder.message(ROLLUP, group.source, start, values);
+    }
+
+    private static Number number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1L << 53) {
+            return (long) value;
+        }
+        return value;
+    }
+
+    private static double numericValue(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static class Group {
+        private final String[] values;
+        private final String source;
+        private final long[] seen;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxs;
+        private long count;
+
+        Group(String[] values, String source, int fields) {
+            this.values = values;
+            this.source = source;
+            this.seen = new long[fields];
+            this.sums = new double[fields];
+            this.mins = new double[fields];
+            this.maxs = new double[fields];
+        }
+
+        void add(int field, double value) {
+            if (seen[field]++ == 0) {
+                mins[field] = value;
+                maxs[field] = value;
+            } else {
+                mins[field] = Math.min(mins[field], value);
+                maxs[field] = Math.max(maxs[field], value);
+            }
+            sums[field] += value;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.stages;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size Bloom filter over 64-bit hashes, safe for concurrent use.
+ */
+class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    /**
+     * @param capacity            number of distinct entries the filter is sized for
+     * @param falsePositiveRatio  wanted false positive ratio at that capacity
+     */
+    BloomFilter(int capacity, double falsePositiveRatio) {
+        final double ln2 = Math.log(2);
+        final long wantedBits = (long) Math.ceil(-Math.max(1, capacity) * Math.log(falsePositiveRatio) / (ln2 * ln2));
+        this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (wantedBits + 63) / 64));
+        this.bits = words.length() * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / Math.max(1, capacity) * ln2));
+    }
+
+    boolean mightContain(long hash) {
+        final long h1 = hash;
+        final long h2 = hash >>> 32 | 1;
+        for (int i = 0; i < hashes; i++) {
+            final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void put(long hash) {
+        final long h1 = hash;
+        final long h2 = hash >>> 32 | 1;
+        for (int i = 0; i < hashes; i++) {
+            final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+            final int index = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+            long word;
+            while (((word = words.get(index)) & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                // retry, another bit of the word was set concurrently
+            }
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            words.lazySet(i, 0L);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.stages;
+
+import com.graylog.splunk.output.encoders.Encoder;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.joda.time.ReadableInstant;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses repeated lines within a time window, using a rotating pair of Bloom filters.
+ *
+ * A line is identified by the configured fields, or by all fields of the message except its ID,
+ * timestamps and Graylog's {@code gl2_*} metadata. The encoded line is not used, since most formats
+ * carry the message timestamp and no two lines would ever match.
+ *
+ * A line is a repeat if its hash is in the filter of the current or of the previous window. Only
+ * forwarded lines are added, so a forwarded line is suppressed for the rest of its window and the
+ * whole next one: a line that keeps repeating through a storm passes again every second window.
+ * Memory is fixed by the configured capacity, however many distinct lines arrive; beyond it, more
+ * lines are wrongly taken for repeats. Concurrent writers may both forward the first copy of a new line.
+ *
+ * A window that suppressed anything ends with a summary built with {@link Encoder#message}, stamped
+ * with the start of the window and holding {@code window=60s suppressed=n}.
+ */
+public class Deduplicator {
+
+    private static final double FALSE_POSITIVE_RATIO = 0.001;
+    private static final String GRAYLOG_METADATA = "gl2_";
+    private static final String SUMMARY = "dedup";
+
+    private final Encoder encoder;
+    private final String source;
+    private final String[] fields;
+    private final long windowNanos;
+    private final String window;
+    private final AtomicLong suppressed = new AtomicLong();
+
+    private volatile Filters filters;
+
+    /**
+     * @param encoder       encoder which encodes the summaries
+     * @param fields        fields whose values identify a line, all but ID, timestamps and metadata if empty
+     * @param windowSeconds length of one window
+     * @param capacity      distinct lines per window the filters are sized for
+     */
+    public Deduplicator(Encoder encoder, List<String> fields, long windowSeconds, int capacity) {
+        this.encoder = encoder;
+        this.source = Tools.getLocalCanonicalHostname();
+        this.fields = fields.toArray(new String[fields.size()]);
+        this.window = windowSeconds + "s";
+        this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+        this.filters = new Filters(
+                new BloomFilter(capacity, FALSE_POSITIVE_RATIO),
+                new BloomFilter(capacity, FALSE_POSITIVE_RATIO),
+                System.currentTimeMillis(),
+                System.nanoTime() + windowNanos);
+    }
+
+    /**
+     * @return {@code true} if the message repeats one forwarded within the window and must be dropped
+     */
+    public boolean isDuplicate(Message message) {
+        final long hash = fields.length == 0 ? hashContent(message) : hashFields(message);
+
+        final Filters f = filters;
+        if (f.current.mightContain(hash) || f.previous.mightContain(hash)) {
+            suppressed.incrementAndGet();
+            return true;
+        }
+        f.current.put(hash);
+        return false;
+    }
+
+    private long hashFields(Message message) {
+        long h = Hash64.seed();
+        for (String field : fields) {
+            h = Hash64.combine(h, message.getField(field));
+        }
+        return Hash64.mix(h);
+    }
+
+    /**
+     * Order-independent hash of all fields that do not change from one copy of a line to the next.
+     */
+    private static long hashContent(Message message) {
+        long sum = 0;
+        for (Map.Entry<String, Object> field : message.getFields().entrySet()) {
+            final String key = field.getKey();
+            final Object value = field.getValue();
+            if (key.equals(Message.FIELD_ID) || key.startsWith(GRAYLOG_METADATA)
+                    || value instanceof ReadableInstant || value instanceof Date) {
+                continue;
+            }
+            sum += Hash64.mix(Hash64.combine(Hash64.combine(Hash64.seed(), key), value));
+        }
+        return Hash64.mix(sum);
+    }
+
+    /**
+     * Starts a new window if the current one is over.
+     *
+     * @return the summary of the closed window if it suppressed anything, otherwise {@code null}
+     */
+    public Message rotateIfDue() {
+        if (System.nanoTime() - filters.rotateAt < 0) {
+            return null;
+        }
+        return rotate(false);
+    }
+
+    /**
+     * Closes the current window regardless of its age.
+     *
+     * @return the summary of the window if it suppressed anything, otherwise {@code null}
+     */
+    public Message flush() {
+        return rotate(true);
+    }
+
+    /**
+     * How often the window has to be checked to send its summary on time, in milliseconds.
+     */
+    public long checkIntervalMillis() {
+        return Math.max(1L, Math.min(1000L, TimeUnit.NANOSECONDS.toMillis(windowNanos) / 10));
+    }
+
+    private Message rotate(boolean force) {
+        final long now = System.nanoTime();
+        final long count;
+        final long startMillis;
+        synchronized (this) {
+            final Filters f = filters;
+            if (!force && now - f.rotateAt < 0) {
+                // another writer rotated first
+                return null;
+            }
+            f.previous.clear();
+            filters = new Filters(f.previous, f.current, System.currentTimeMillis(), now + windowNanos);
+            count = suppressed.getAndSet(0);
+            startMillis = f.startMillis;
+        }
+        if (count == 0) {
+            return null;
+        }
+
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("window", window);
+        values.put("suppressed", count);
+        return encoder.message(SUMMARY, source, new DateTime(startMillis), values);
+    }
+
+    private static class Filters {
+        private final BloomFilter current;
+        private final BloomFilter previous;
+        private final long startMillis;
+        private final long rotateAt;
+
+        Filters(BloomFilter current, BloomFilter previous, long startMillis, long rotateAt) {
+            this.current = current;
+            this.previous = previous;
+            this.startMillis = startMillis;
+            this.rotateAt = rotateAt;
+        }
+    }
+}
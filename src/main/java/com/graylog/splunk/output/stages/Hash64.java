@@ -0,0 +1,68 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.stages;
+
+/**
+ * 64-bit hashes of field values, computed without copying or allocating.
+ */
+public final class Hash64 {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long M = 0xC6A4A7935BD1E995L;
+
+    private Hash64() {
+    }
+
+    /**
+     * Hashes the string form of a value into an existing hash, {@code null} included.
+     */
+    public static long combine(long h, Object value) {
+        if (value == null) {
+            return step(h, 0x6E756C6CL);
+        }
+        final CharSequence s = value instanceof CharSequence ? (CharSequence) value : value.toString();
+        h = step(h, s.length());
+        for (int i = 0; i < s.length(); i++) {
+            h = step(h, s.charAt(i));
+        }
+        return h;
+    }
+
+    public static long seed() {
+        return SEED;
+    }
+
+    /**
+     * Final avalanche, so that the low and high bits can be used independently.
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long step(long h, long k) {
+        k *= M;
+        k ^= k >>> 47;
+        k *= M;
+        h ^= k;
+        return h * M;
+    }
+}
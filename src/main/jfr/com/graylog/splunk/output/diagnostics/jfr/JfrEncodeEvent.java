@@ -0,0 +1,53 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event behind {@link SplunkEncodeEvent}.
+ */
+@Name("com.graylog.splunk.SplunkEncode")
+@Label("Splunk Encode")
+@Category({"Graylog", "Splunk Output"})
+@Description("Encoding of one message into a line")
+@Threshold("1 ms")
+class JfrEncodeEvent extends Event implements SplunkEncodeEvent {
+
+    @Label("Encoder")
+    private String encoder;
+
+    @Label("Bytes")
+    @DataAmount
+    private int bytes;
+
+    @Override
+    public void finish(String encoder, int bytes) {
+        end();
+        if (shouldCommit()) {
+            this.encoder = encoder;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
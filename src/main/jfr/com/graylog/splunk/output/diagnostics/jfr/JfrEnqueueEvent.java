@@ -0,0 +1,51 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event behind {@link SplunkEnqueueEvent}.
+ */
+@Name("com.graylog.splunk.SplunkEnqueue")
+@Label("Splunk Enqueue")
+@Category({"Graylog", "Splunk Output"})
+@Description("Handing one line to a sender queue")
+@Threshold("1 ms")
+class JfrEnqueueEvent extends Event implements SplunkEnqueueEvent {
+
+    @Label("Queue Depth")
+    private int queueDepth;
+
+    @Label("Accepted")
+    private boolean accepted;
+
+    @Override
+    public void finish(int queueDepth, boolean accepted) {
+        end();
+        if (shouldCommit()) {
+            this.queueDepth = queueDepth;
+            this.accepted = accepted;
+            commit();
+        }
+    }
+}
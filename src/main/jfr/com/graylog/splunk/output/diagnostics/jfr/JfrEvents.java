@@ -0,0 +1,57 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+
+/**
+ * {@link FlightEvents} backed by {@code jdk.jfr}. This source set is only compiled on JDK 11+
+ * (profile {@code jfr}), {@link FlightRecorderSupport} loads it by name.
+ */
+public class JfrEvents implements FlightEvents {
+
+    private final EventType encode = EventType.getEventType(JfrEncodeEvent.class);
+    private final EventType enqueue = EventType.getEventType(JfrEnqueueEvent.class);
+    private final EventType send = EventType.getEventType(JfrSendEvent.class);
+    private final EventType reconnect = EventType.getEventType(JfrReconnectEvent.class);
+
+    @Override
+    public SplunkEncodeEvent encode() {
+        return encode.isEnabled() ? begin(new JfrEncodeEvent()) : null;
+    }
+
+    @Override
+    public SplunkEnqueueEvent enqueue() {
+        return enqueue.isEnabled() ? begin(new JfrEnqueueEvent()) : null;
+    }
+
+    @Override
+    public SplunkSendEvent send() {
+        return send.isEnabled() ? begin(new JfrSendEvent()) : null;
+    }
+
+    @Override
+    public SplunkReconnectEvent reconnect() {
+        return reconnect.isEnabled() ? begin(new JfrReconnectEvent()) : null;
+    }
+
+    private static <T extends Event> T begin(T event) {
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event behind {@link SplunkReconnectEvent}.
+ */
+@Name("com.graylog.splunk.SplunkReconnect")
+@Label("Splunk Reconnect")
+@Category({"Graylog", "Splunk Output"})
+@Description("One attempt to connect to the receiver")
+@Threshold("0 ms")
+class JfrReconnectEvent extends Event implements SplunkReconnectEvent {
+
+    @Label("Host")
+    private String host;
+
+    @Label("Port")
+    private int port;
+
+    @Label("Success")
+    private boolean success;
+
+    @Override
+    public void finish(String host, int port, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.host = host;
+            this.port = port;
+            this.success = success;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.diagnostics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event behind {@link SplunkSendEvent}.
+ */
+@Name("com.graylog.splunk.SplunkSend")
+@Label("Splunk Send")
+@Category({"Graylog", "Splunk Output"})
+@Description("Writing a batch of lines to the channel")
+@Threshold("10 ms")
+class JfrSendEvent extends Event implements SplunkSendEvent {
+
+    @Label("Batch Size")
+    private int batchSize;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    @Label("Success")
+    private boolean success;
+
+    @Override
+    public void finish(int batchSize, long bytes, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.batchSize = batchSize;
+            this.bytes = bytes;
+            this.success = success;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputMetricsTest {
+
+    @Test
+    public void outputsOnTheSameStreamDoNotShareMetrics() {
+        final MetricRegistry registry = new MetricRegistry();
+        final OutputMetrics first = new OutputMetrics(registry, "output.stream");
+        final OutputMetrics second = new OutputMetrics(registry, "output.stream");
+        try {
+            first.counter("delivered").inc(3);
+            second.counter("delivered").inc(5);
+            first.gauge("state", constant("READY"));
+            second.gauge("state", constant("DEGRADED"));
+
+            assertThat(first.getInstance()).isNotEqualTo(second.getInstance());
+            assertThat(registry.counter("output.stream." + first.getInstance() + ".delivered").getCount()).isEqualTo(3);
+            assertThat(registry.counter("output.stream." + second.getInstance() + ".delivered").getCount()).isEqualTo(5);
+            assertThat(registry.getGauges()).containsKeys(
+                    "output.stream." + first.getInstance() + ".state",
+                    "output.stream." + second.getInstance() + ".state");
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void closeRemovesOnlyOwnMetrics() {
+        final MetricRegistry registry = new MetricRegistry();
+        final OutputMetrics first = new OutputMetrics(registry, "output.close");
+        final OutputMetrics second = new OutputMetrics(registry, "output.close");
+        try {
+            first.counter("delivered");
+            second.counter("delivered");
+            second.gauge("state", constant("READY"));
+            first.close();
+
+            assertThat(registry.getNames()).containsOnly(
+                    "output.close." + second.getInstance() + ".delivered",
+                    "output.close." + second.getInstance() + ".state");
+        } finally {
+            second.close();
+        }
+        assertThat(registry.getNames()).isEmpty();
+    }
+
+    @Test
+    public void restartedOutputGetsItsNumberBack() {
+        final MetricRegistry registry = new MetricRegistry();
+        final OutputMetrics metrics = new OutputMetrics(registry, "output.restart");
+        final int instance = metrics.getInstance();
+        metrics.close();
+
+        final OutputMetrics restarted = new OutputMetrics(registry, "output.restart");
+        try {
+            assertThat(restarted.getInstance()).isEqualTo(instance);
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private static Gauge<String> constant(final String value) {
+        return new Gauge<String>() {
+            @Override
+            public String getValue() {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graylog.splunk.output.senders.SharedTransports;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.streams.Stream;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SplunkOutputTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void batchWritesTheLinesOfSingleWritesInOrder() throws Exception {
+        final List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            batch.add(i % 13 == 0 ? null : message(i));
+        }
+
+        final File sequential = folder.newFolder("sequential");
+        final SplunkOutput single = output(sequential, 0);
+        for (Message message : batch) {
+            single.write(message);
+        }
+        single.stop();
+
+        final File parallel = folder.newFolder("parallel");
+        final SplunkOutput batched = output(parallel, 100);
+        batched.write(batch);
+        batched.stop();
+
+        final List<String> lines = Files.readAllLines(new File(parallel, "out.log").toPath(), StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(5000 - (5000 + 12) / 13)
+                .isEqualTo(Files.readAllLines(new File(sequential, "out.log").toPath(), StandardCharsets.UTF_8));
+        assertThat(lines.get(0)).endsWith(" seq=1");
+        assertThat(lines.get(lines.size() - 1)).endsWith(" seq=4999");
+    }
+
+    private static SplunkOutput output(File directory, int parallelEncodingThreshold) throws Exception {
+        final Map<String, Object> config = new HashMap<>();
+        config.put("splunk_host", directory.getAbsolutePath());
+        config.put("splunk_protocol", "FILE");
+        config.put("splunk_encoder", "splunk");
+        config.put("file_pattern", "'out.log'");
+        config.put("fields_include", "seq");
+        config.put("in_flight_limit", 10000);
+        config.put("parallel_encoding_threshold", parallelEncodingThreshold);
+        return new SplunkOutput(new MetricRegistry(), new SharedTransports(), stream(), new Configuration(config));
+    }
+
+    private static Stream stream() {
+        return (Stream) Proxy.newProxyInstance(Stream.class.getClassLoader(), new Class<?>[]{Stream.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getId":
+                        return "5b0a4a4e2ab79c0001234567";
+                    case "getTitle":
+                        return "tlog";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    private static Message message(int seq) {
+        final Message message = new Message("PlayerLogin", "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+        message.addField("seq", seq);
+        return message;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.benchmarks;
+
+import com.graylog.splunk.output.encoders.CsvEncoder;
+import com.graylog.splunk.output.encoders.Encoder;
+import com.graylog.splunk.output.encoders.FieldProjection;
+import com.graylog.splunk.output.encoders.JsonEncoder;
+import com.graylog.splunk.output.encoders.KeyValueEncoder;
+import com.graylog.splunk.output.encoders.TlogEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared suite for all encoders: one typical tlog message encoded into a reused direct buffer,
+ * in messages per second on one thread.
+ *
+ * Compiled with {@code mvn -P benchmarks test-compile}, then run with
+ * <pre>java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main EncoderBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+
+    @Param({"splunk", "tlog", "json", "csv"})
+    public String encoder;
+
+    private Encoder instance;
+    private Message message;
+    private ByteBuf out;
+
+    @Setup
+    public void setUp() {
+        message = message();
+        final FieldProjection fields = FieldProjection.of("level,gameid,zoneid,openid", null);
+        switch (encoder) {
+            case "splunk":
+                instance = new KeyValueEncoder(FieldProjection.of(null, null));
+                break;
+            case "tlog":
+                instance = new TlogEncoder("PlayerLogin", TLOG_FORMAT);
+                break;
+            case "json":
+                instance = new JsonEncoder(FieldProjection.of(null, null));
+                break;
+            case "csv":
+                instance = new CsvEncoder(fields);
+                break;
+            default:
+                throw new IllegalArgumentException(encoder);
+        }
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(4096);
+        if (!instance.encode(message, out)) {
+            throw new IllegalStateException(encoder + " rejected the benchmark message");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+    }
+
+    @Benchmark
+    public int encode() {
+        out.clear();
+        instance.encode(message, out);
+        return out.writerIndex();
+    }
+
+    static final String TLOG_FORMAT = "FlowName=,dtEventTime=,GameSvrId=,vGameAppid=,PlatID=0,iZoneAreaID=0,vopenid=,Level=0,PlayerFriendsNum=0";
+
+    /**
+     * A login event as the game servers send it, with the tlog fields in the {@code {...}} body.
+     */
+    static Message message() {
+        final Message message = new Message(
+                "PlayerLogin {FlowName=PlayerLogin,dtEventTime=2026-10-19 12:00:00,GameSvrId=10.0.0.12,vGameAppid=1104466820,"
+                        + "PlatID=1,iZoneAreaID=3021,vopenid=5F1E0B3A9C2D4E6F8A7B6C5D4E3F2A1B,Level=57,PlayerFriendsNum=12}",
+                "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+        message.addField("level", 6);
+        message.addField("gameid", "1104466820");
+        message.addField("zoneid", 3021);
+        message.addField("openid", "5F1E0B3A9C2D4E6F8A7B6C5D4E3F2A1B");
+        message.addField("facility", "tlog");
+        return message;
+    }
+}
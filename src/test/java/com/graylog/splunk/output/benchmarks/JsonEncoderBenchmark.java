@@ -0,0 +1,97 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.graylog.splunk.output.encoders.FieldProjection;
+import com.graylog.splunk.output.encoders.JsonEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON encoder with nested maps and lists, numbers and dates, on one thread. The encoder has to
+ * stay above 100k messages per second here.
+ *
+ * Compiled with {@code mvn -P benchmarks test-compile}, then run with
+ * <pre>java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main JsonEncoderBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class JsonEncoderBenchmark {
+
+    private JsonEncoder encoder;
+    private Message message;
+    private ByteBuf out;
+
+    @Setup
+    public void setUp() {
+        encoder = new JsonEncoder(FieldProjection.of(null, null));
+        message = EncoderBenchmark.message();
+        message.addField("login_time", new DateTime(2026, 10, 19, 11, 59, 58, DateTimeZone.UTC));
+        message.addField("server_time", new Date(1792411200000L));
+        message.addField("balance", new BigDecimal("1024.50"));
+        message.addField("ratio", 0.125d);
+        message.addField("online", true);
+        message.addField("items", ImmutableList.of(1001, 1002, 1003, 2001));
+        message.addField("device", ImmutableMap.of(
+                "os", "Android 14",
+                "model", "SM-S9180",
+                "screen", ImmutableMap.of("width", 1440, "height", 3120),
+                "tags", ImmutableList.of("wifi", "5g")));
+        out = PooledByteBufAllocator.DEFAULT.directBuffer(4096);
+        if (!encoder.encode(message, out)) {
+            throw new IllegalStateException("JSON encoder rejected the benchmark message");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+    }
+
+    @Benchmark
+    public int encode() {
+        out.clear();
+        encoder.encode(message, out);
+        return out.writerIndex();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.benchmarks;
+
+import com.graylog.splunk.output.senders.SenderMode;
+import com.graylog.splunk.output.senders.SenderState;
+import com.graylog.splunk.output.senders.TCPSender;
+import com.graylog.splunk.output.testing.TcpSink;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueue-to-wire latency of one line: from {@code submit} until the channel reports the write
+ * done, which is what the output's {@code latency.send} histogram records. Compares the sender
+ * thread hop of PLATFORM_THREAD with writing from the event loop; JMH prints p99 and p99.9 of
+ * the samples. Four producer threads share one connection.
+ *
+ * Compiled with {@code mvn -P benchmarks test-compile}, then run with
+ * <pre>java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main SendLatencyBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(4)
+@Fork(1)
+public class SendLatencyBenchmark {
+
+    private static final byte[] LINE = "2026/10/19-12:00:00.000 PlayerLogin original_source=gamesvr-12 level=6 zoneid=3021\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"PLATFORM_THREAD", "EVENT_LOOP"})
+    public SenderMode mode;
+
+    private TcpSink sink;
+    private TCPSender sender;
+
+    @Setup(Level.Trial)
+    public void connect() throws InterruptedException {
+        sink = new TcpSink();
+        sender = new TCPSender("127.0.0.1", sink.getPort(), 65536, mode);
+        sender.initialize();
+        while (sender.getState() != SenderState.READY) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        sender.stop(10, TimeUnit.SECONDS);
+        sink.close();
+    }
+
+    @Benchmark
+    public void submitToWire() throws InterruptedException {
+        sender.submit(PooledByteBufAllocator.DEFAULT.directBuffer(LINE.length).writeBytes(LINE)).await();
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.benchmarks;
+
+import com.graylog.splunk.output.senders.SenderMode;
+import com.graylog.splunk.output.senders.SenderState;
+import com.graylog.splunk.output.senders.TCPSender;
+import com.graylog.splunk.output.testing.TcpSink;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.concurrent.Future;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU used by many connected senders in each {@link SenderMode}, idle and under load, against a
+ * loopback receiver. {@code cpuCores} is the process CPU time per wall-clock time of an iteration.
+ * VIRTUAL_THREAD falls back to platform threads below JDK 21.
+ *
+ * Compiled with {@code mvn -P benchmarks test-compile}, then run with
+ * <pre>java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main SenderModeBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SenderModeBenchmark {
+
+    private static final byte[] LINE = "2026/10/19-12:00:00.000 PlayerLogin original_source=gamesvr-12 level=6 zoneid=3021\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int BATCH = 100;
+
+    @Param({"PLATFORM_THREAD", "VIRTUAL_THREAD", "EVENT_LOOP"})
+    public SenderMode mode;
+
+    @Param({"50"})
+    public int senders;
+
+    private TcpSink sink;
+    private TCPSender[] connections;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void connect() throws InterruptedException {
+        sink = new TcpSink();
+        connections = new TCPSender[senders];
+        for (int i = 0; i < senders; i++) {
+            connections[i] = new TCPSender("127.0.0.1", sink.getPort(), 65536, mode);
+            connections[i].initialize();
+        }
+        for (TCPSender connection : connections) {
+            while (connection.getState() != SenderState.READY) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        for (TCPSender connection : connections) {
+            connection.stop(10, TimeUnit.SECONDS);
+        }
+        sink.close();
+    }
+
+    /**
+     * Process CPU time over wall-clock time, per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Cpu {
+        public double cpuCores;
+
+        private long cpuStart;
+        private long wallStart;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            cpuStart = processCpuNanos();
+            wallStart = System.nanoTime();
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() {
+            cpuCores = (double) (processCpuNanos() - cpuStart) / (System.nanoTime() - wallStart);
+        }
+
+        private static long processCpuNanos() {
+            return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        }
+    }
+
+    /**
+     * Connected senders without traffic.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void idle(Cpu cpu) throws InterruptedException {
+        Thread.sleep(100);
+    }
+
+    /**
+     * Batches of lines submitted to the senders in turn, waiting for each batch to be written.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void loaded(Cpu cpu) throws InterruptedException {
+        final TCPSender connection = connections[next++ % connections.length];
+        Future<Void> last = null;
+        for (int i = 0; i < BATCH; i++) {
+            final ByteBuf line = PooledByteBufAllocator.DEFAULT.directBuffer(LINE.length).writeBytes(LINE);
+            last = connection.submit(line);
+        }
+        last.await();
+    }
+}
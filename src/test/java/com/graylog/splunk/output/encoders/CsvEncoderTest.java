@@ -0,0 +1,76 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CsvEncoderTest {
+
+    @Test
+    public void writesIncludedFieldsAsColumns() {
+        final Message message = message();
+        message.addField("zone", 3021);
+        message.addField("level", 57L);
+        message.addField("ratio", 0.5);
+
+        assertThat(encode(new CsvEncoder(FieldProjection.of("zone,missing,level,ratio", null)), message))
+                .isEqualTo("3021,,57,0.5");
+    }
+
+    @Test
+    public void writesTimestampSourceAndMessageWithoutIncludeList() {
+        assertThat(encode(new CsvEncoder(FieldProjection.of(null, null)), message()))
+                .isEqualTo("2026-10-19T12:00:00.000Z,gamesvr-12,PlayerLogin");
+    }
+
+    @Test
+    public void quotesCommasAndDoublesQuotes() {
+        final Message message = message();
+        message.addField("name", "Li, \"Lei\"");
+
+        assertThat(encode(new CsvEncoder(FieldProjection.of("name", null)), message)).isEqualTo("\"Li, \"\"Lei\"\"\"");
+    }
+
+    @Test
+    public void replacesLineBreaksUnlessKept() {
+        final Message message = message();
+        message.addField("reason", "kicked\r\nby admin");
+        final FieldProjection projection = FieldProjection.of("reason", null);
+
+        assertThat(encode(new CsvEncoder(projection), message)).isEqualTo("kicked  by admin");
+        assertThat(encode(new CsvEncoder(projection, true), message)).isEqualTo("\"kicked\r\nby admin\"");
+    }
+
+    private static Message message() {
+        return new Message("PlayerLogin", "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+    }
+
+    private static String encode(Encoder encoder, Message message) {
+        final ByteBuf out = Unpooled.buffer();
+        assertThat(encoder.encode(message, out)).isTrue();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FieldProjectionTest {
+
+    @Test
+    public void writesIncludedFieldsInConfigurationOrder() {
+        final FieldProjection projection = FieldProjection.of(" zone, level ,zone,missing", null);
+
+        assertThat(projection.isFixed()).isTrue();
+        assertThat(projection.getFieldList()).containsExactly("zone", "level", "missing");
+        assertThat(write(projection, message())).isEqualTo(" zone=3021 level=57");
+    }
+
+    @Test
+    public void writesAllButReservedAndExcludedFieldsWithoutIncludeList() {
+        final FieldProjection projection = FieldProjection.of("", "secret, level");
+
+        assertThat(projection.isFixed()).isFalse();
+        assertThat(projection.getFieldList()).isEmpty();
+        assertThat(projection.isExcluded(Message.FIELD_MESSAGE)).isTrue();
+        assertThat(projection.isExcluded(Message.FIELD_STREAMS)).isTrue();
+        assertThat(projection.isExcluded("secret")).isTrue();
+        assertThat(write(projection, message())).isEqualTo(" zone=3021");
+    }
+
+    @Test
+    public void quotesAndKeepsLineBreaksLikeTheEscaper() {
+        final Message message = message();
+        message.addField("reason", "kicked\nby admin");
+        final FieldProjection projection = FieldProjection.of("reason", null);
+
+        assertThat(write(projection, message)).isEqualTo(" reason=\"kicked by admin\"");
+
+        final ByteBuf out = Unpooled.buffer();
+        projection.writeKeyValues(message, out, true);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(" reason=\"kicked\nby admin\"");
+    }
+
+    private static Message message() {
+        final Message message = new Message("PlayerLogin", "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+        message.addField("zone", 3021);
+        message.addField("level", 57L);
+        message.addField("secret", "hunter2");
+        return message;
+    }
+
+    private static String write(FieldProjection projection, Message message) {
+        final ByteBuf out = Unpooled.buffer();
+        projection.writeKeyValues(message, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonEncoderTest {
+
+    private static final String HEAD = "{\"timestamp\":\"2026-10-19T12:00:00.000Z\",\"source\":\"gamesvr-12\",\"message\":\"PlayerLogin\"";
+
+    @Test
+    public void writesIncludedFieldsInOrder() {
+        final Message message = message();
+        message.addField("zone", 3021);
+        message.addField("level", 57L);
+        message.addField("ratio", 0.5);
+        message.addField("gm", true);
+
+        assertThat(encode(new JsonEncoder(FieldProjection.of("level,missing,zone,ratio,gm", null)), message))
+                .isEqualTo(HEAD + ",\"level\":57,\"zone\":3021,\"ratio\":0.5,\"gm\":true}");
+    }
+
+    @Test
+    public void escapesQuotesBackslashesAndControlCharacters() {
+        final Message message = message();
+        message.addField("reason", "kicked \"Li\\Lei\"\r\n\tby 管理员");
+
+        assertThat(encode(new JsonEncoder(FieldProjection.of("reason", null)), message))
+                .isEqualTo(HEAD + ",\"reason\":\"kicked \\\"Li\\\\Lei\\\"\\r\\n\\tby 管理员\"}");
+    }
+
+    @Test
+    public void writesNestedObjectsAndArrays() {
+        final Message message = message();
+        message.addField("role", ImmutableMap.of("name", "LiLei", "items", ImmutableList.of(1, "sword", false)));
+        message.addField("tags", new Object[]{"pvp", null, new DateTime(2026, 10, 19, 11, 0, DateTimeZone.UTC)});
+        message.addField("empty", Arrays.asList());
+
+        assertThat(encode(new JsonEncoder(FieldProjection.of("role,tags,empty", null)), message))
+                .isEqualTo(HEAD + ",\"role\":{\"name\":\"LiLei\",\"items\":[1,\"sword\",false]}"
+                        + ",\"tags\":[\"pvp\",null,\"2026-10-19T11:00:00.000Z\"],\"empty\":[]}");
+    }
+
+    @Test
+    public void startsEveryEventWithoutStateOfThePreviousOne() {
+        final JsonEncoder encoder = new JsonEncoder(FieldProjection.of(null, null));
+        final Message first = message();
+        first.addField("role", ImmutableMap.of("items", ImmutableList.of(1, 2)));
+        first.addField("zone", 3021);
+        final Message second = message();
+        second.addField("level", 57);
+
+        final ByteBuf out = Unpooled.buffer();
+        assertThat(encoder.encode(first, out)).isTrue();
+        final int firstLength = out.readableBytes();
+        assertThat(encoder.encode(second, out)).isTrue();
+
+        // No separator, no leftover fields and no open scope between the two events.
+        assertThat(out.toString(firstLength, out.readableBytes() - firstLength, StandardCharsets.UTF_8))
+                .isEqualTo(HEAD + ",\"level\":57}");
+        assertThat(encode(new JsonEncoder(FieldProjection.of("zone", null)), second)).isEqualTo(HEAD + "}");
+    }
+
+    @Test
+    public void startsOverAfterAFailedEvent() {
+        final JsonEncoder encoder = new JsonEncoder(FieldProjection.of("role,zone", null));
+        final Message broken = message();
+        broken.addField("role", ImmutableMap.of("name", new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("unprintable");
+            }
+        }));
+        final Message next = message();
+        next.addField("zone", 3021);
+
+        assertThat(encoder.encode(broken, Unpooled.buffer())).isFalse();
+        // The failed event left the generator inside an object, a reused one would continue there.
+        assertThat(encode(encoder, next)).isEqualTo(HEAD + ",\"zone\":3021}");
+    }
+
+    private static Message message() {
+        return new Message("PlayerLogin", "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+    }
+
+    private static String encode(Encoder encoder, Message message) {
+        final ByteBuf out = Unpooled.buffer();
+        assertThat(encoder.encode(message, out)).isTrue();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
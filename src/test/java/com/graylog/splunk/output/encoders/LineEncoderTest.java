@@ -0,0 +1,118 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LineEncoderTest {
+
+    @Test
+    public void terminatesLinesWithCrLf() {
+        final LineEncoder encoder = new LineEncoder(text("PlayerLogin zone=3021"));
+
+        assertThat(encode(encoder)).isEqualTo("PlayerLogin zone=3021\r\n");
+    }
+
+    @Test
+    public void prefixesOctetCountedEventsWithTheirLength() {
+        final LineEncoder encoder = new LineEncoder(text("PlayerLogin\nzone=3021"), Framing.OCTET_COUNTED, null);
+
+        final ByteBuf line = encoder.encode(message());
+        try {
+            // "21 " right-aligned in the 11 byte slot, the event is not moved.
+            assertThat(line.readerIndex()).isEqualTo(11 - 3);
+            assertThat(line.toString(StandardCharsets.UTF_8)).isEqualTo("21 PlayerLogin\nzone=3021");
+        } finally {
+            line.release();
+        }
+    }
+
+    @Test
+    public void countsBytesNotCharacters() {
+        final LineEncoder encoder = new LineEncoder(text("区服=华东"), Framing.OCTET_COUNTED, null);
+
+        assertThat(encode(encoder)).isEqualTo("13 区服=华东");
+    }
+
+    @Test
+    public void fitsLongLengthsIntoTheSlot() {
+        final String event = Strings.repeat("x", 1234567);
+        final LineEncoder encoder = new LineEncoder(text(event), Framing.OCTET_COUNTED, null);
+
+        final ByteBuf line = encoder.encode(message());
+        try {
+            assertThat(line.readerIndex()).isEqualTo(11 - 8);
+            assertThat(line.readableBytes()).isEqualTo(8 + event.length());
+            assertThat(line.toString(line.readerIndex(), 8, StandardCharsets.US_ASCII)).isEqualTo("1234567 ");
+        } finally {
+            line.release();
+        }
+    }
+
+    @Test
+    public void countsTheSyslogHeader() {
+        final LineEncoder encoder = new LineEncoder(text("zone=3021"), Framing.OCTET_COUNTED, new SyslogHeader("tlog"));
+
+        final String header = "<14>1 2026-10-19T12:00:00.000Z gamesvr-12 tlog - - - ";
+        assertThat(encode(encoder)).isEqualTo((header.length() + 9) + " " + header + "zone=3021");
+    }
+
+    @Test
+    public void returnsNullIfTheEncoderRejectsTheMessage() {
+        final LineEncoder encoder = new LineEncoder(new Encoder() {
+            @Override
+            public boolean encode(Message message, ByteBuf out) {
+                out.writeByte('x');
+                return false;
+            }
+        }, Framing.OCTET_COUNTED, null);
+
+        assertThat(encoder.encode(message())).isNull();
+    }
+
+    private static Encoder text(final String text) {
+        return new Encoder() {
+            @Override
+            public boolean encode(Message message, ByteBuf out) {
+                out.writeCharSequence(text, StandardCharsets.UTF_8);
+                return true;
+            }
+        };
+    }
+
+    private static Message message() {
+        return new Message("PlayerLogin", "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+    }
+
+    private static String encode(LineEncoder encoder) {
+        final ByteBuf line = encoder.encode(message());
+        try {
+            return line.toString(StandardCharsets.UTF_8);
+        } finally {
+            line.release();
+        }
+    }
+}
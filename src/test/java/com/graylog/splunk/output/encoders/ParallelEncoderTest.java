@@ -0,0 +1,80 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelEncoderTest {
+
+    private static final String FORMAT = "FlowName=-,iZoneAreaID=0,iSeq=0";
+
+    @Test
+    public void returnsTheLinesOfTheSequentialPathInBatchOrder() {
+        final List<Message> batch = new ArrayList<>();
+        int expected = 0;
+        for (int i = 0; i < 10000; i++) {
+            // Every 7th message belongs to another flow and is not sent, every 11th is missing.
+            final String flow = i % 7 == 0 ? "PlayerLogout" : "PlayerLogin";
+            batch.add(i % 11 == 0 ? null : message("login {FlowName=" + flow + ",iZoneAreaID=3021,iSeq=" + i + "}"));
+            if (i % 7 != 0 && i % 11 != 0) {
+                expected++;
+            }
+        }
+        final LineEncoder encoder = new LineEncoder(new TlogEncoder("PlayerLogin", FORMAT));
+
+        final List<String> sequential = lines(new ParallelEncoder(encoder, 0).encode(batch));
+        final List<String> parallel = lines(new ParallelEncoder(encoder, 1).encode(batch));
+
+        assertThat(parallel).hasSize(batch.size()).isEqualTo(sequential);
+        int sent = 0;
+        for (String line : parallel) {
+            if (line != null) {
+                sent++;
+            }
+        }
+        assertThat(sent).isEqualTo(expected);
+        assertThat(parallel.get(1)).isEqualTo("PlayerLogin|3021|1\r\n");
+        assertThat(parallel.get(9998)).isEqualTo("PlayerLogin|3021|9998\r\n");
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+    }
+
+    private static List<String> lines(ByteBuf[] lines) {
+        final List<String> strings = new ArrayList<>(lines.length);
+        for (ByteBuf line : lines) {
+            if (line == null) {
+                strings.add(null);
+            } else {
+                strings.add(line.toString(StandardCharsets.UTF_8));
+                line.release();
+            }
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SplunkEscaperTest {
+
+    @Test
+    public void writesPlainValuesAsTheyAre() {
+        assertThat(value("PlayerLogin")).isEqualTo("PlayerLogin");
+        assertThat(value("")).isEqualTo("");
+    }
+
+    @Test
+    public void quotesValuesWithWhitespace() {
+        assertThat(value("player login")).isEqualTo("\"player login\"");
+        assertThat(value("a\tb")).isEqualTo("\"a\tb\"");
+    }
+
+    @Test
+    public void replacesLineBreaksInQuotedValues() {
+        assertThat(value("first\r\nsecond")).isEqualTo("\"first  second\"");
+    }
+
+    @Test
+    public void keepsLineBreaksIfAsked() {
+        final ByteBuf out = Unpooled.buffer();
+        SplunkEscaper.writeValue(out, "first\nsecond", true);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("\"first\nsecond\"");
+    }
+
+    @Test
+    public void writesTextWithoutQuotes() {
+        final ByteBuf out = Unpooled.buffer();
+        SplunkEscaper.writeNoNewLines(out, "a b\nc");
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("a b c");
+    }
+
+    @Test
+    public void writesScalars() {
+        assertThat(value(null)).isEqualTo("null");
+        assertThat(value(42)).isEqualTo("42");
+        assertThat(value(-7L)).isEqualTo("-7");
+        assertThat(value(1.5)).isEqualTo("1.5");
+        assertThat(value(true)).isEqualTo("true");
+    }
+
+    @Test
+    public void writesLongsLikeLongToString() {
+        for (long value : new long[]{0, 9, 10, -1, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            final ByteBuf out = Unpooled.buffer();
+            SplunkEscaper.writeLong(out, value);
+            assertThat(out.toString(StandardCharsets.US_ASCII)).isEqualTo(Long.toString(value));
+        }
+    }
+
+    @Test
+    public void encodesUtf8LikeString() {
+        final String s = "zone=华东 é 🎮 unpaired \uD800 end";
+        final ByteBuf out = Unpooled.buffer();
+        SplunkEscaper.writeUtf8(out, s);
+        final byte[] bytes = new byte[out.readableBytes()];
+        out.readBytes(bytes);
+        assertThat(bytes).isEqualTo(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String value(Object value) {
+        final ByteBuf out = Unpooled.buffer();
+        SplunkEscaper.writeValue(out, value);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
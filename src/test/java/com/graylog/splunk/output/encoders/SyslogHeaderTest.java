@@ -0,0 +1,88 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SyslogHeaderTest {
+
+    @Test
+    public void writesAnRfc5424Header() {
+        assertThat(header(new SyslogHeader("tlog"), message()))
+                .isEqualTo("<14>1 2026-10-19T12:00:00.007Z gamesvr-12 tlog - - - ");
+    }
+
+    @Test
+    public void takesTheSeverityFromTheLevelField() {
+        final Message message = message();
+        message.addField("level", 3);
+        assertThat(header(new SyslogHeader("tlog"), message)).startsWith("<11>1 ");
+
+        message.addField("level", 9);
+        assertThat(header(new SyslogHeader("tlog"), message)).startsWith("<14>1 ");
+
+        message.addField("level", "3");
+        assertThat(header(new SyslogHeader("tlog"), message)).startsWith("<14>1 ");
+    }
+
+    @Test
+    public void writesTheTimestampInUtc() {
+        final Message message = new Message("PlayerLogin", "gamesvr-12",
+                new DateTime(2026, 10, 19, 20, 0, 0, 7, DateTimeZone.forOffsetHours(8)));
+
+        assertThat(header(new SyslogHeader("tlog"), message)).contains(" 2026-10-19T12:00:00.007Z ");
+    }
+
+    @Test
+    public void replacesCharactersHeaderFieldsCannotHold() {
+        final Message message = new Message("PlayerLogin", "game svr\t12", new DateTime(2026, 10, 19, 12, 0, 0, 7, DateTimeZone.UTC));
+
+        assertThat(header(new SyslogHeader("区服 tlog"), message)).endsWith(" game_svr_12 ___tlog - - - ");
+    }
+
+    @Test
+    public void writesANilValueForMissingFieldsAndTruncatesLongOnes() {
+        assertThat(header(new SyslogHeader(null), message())).endsWith(" gamesvr-12 - - - - ");
+        assertThat(header(new SyslogHeader(Strings.repeat("a", 60)), message()))
+                .endsWith(" gamesvr-12 " + Strings.repeat("a", 48) + " - - - ");
+    }
+
+    @Test
+    public void writesAHeaderForTheOutputsOwnLines() {
+        assertThat(header(new SyslogHeader("tlog"), null)).matches("<14>1 \\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z - tlog - - - ");
+    }
+
+    private static Message message() {
+        return new Message("PlayerLogin", "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, 0, 7, DateTimeZone.UTC));
+    }
+
+    private static String header(SyslogHeader header, Message message) {
+        final ByteBuf out = Unpooled.buffer();
+        header.write(out, message);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
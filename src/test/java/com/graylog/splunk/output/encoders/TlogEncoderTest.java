@@ -0,0 +1,194 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.encoders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link TlogEncoder} against the formatting of the old {@code UDPSender_3#send}, which is
+ * kept below as {@link #baseline} to compare the bytes of both.
+ */
+public class TlogEncoderTest {
+
+    private static final String FLOW = "PlayerLogin";
+    // The old sender failed on columns without a default, so every format has one.
+    private static final String FORMAT = "FlowName=-,dtEventTime=-,iZoneAreaID=0,vRoleName=-,iLevel=1,vReason=none";
+
+    @Test
+    public void writesTheColumnsInFormatOrder() {
+        assertParity(FORMAT, "login {iLevel=57, vRoleName=LiLei, FlowName=PlayerLogin, iZoneAreaID=3021, dtEventTime=2026-10-19 12:00:00}");
+    }
+
+    @Test
+    public void fillsMissingAndEmptyFieldsWithTheirDefaults() {
+        assertParity(FORMAT, "login {FlowName=PlayerLogin,iZoneAreaID=,vRoleName=LiLei}");
+    }
+
+    @Test
+    public void matchesColumnsCaseInsensitively() {
+        assertParity(FORMAT, "login {flowname=PlayerLogin,IZONEAREAID=3021,VROLENAME=LiLei}");
+    }
+
+    @Test
+    public void ignoresUnknownAndInvalidPairs() {
+        assertParity(FORMAT, "login {FlowName=PlayerLogin,iGold=100,iLevel=5=7,vRoleName,iZoneAreaID=3021}");
+    }
+
+    @Test
+    public void writesSpacesAndPipesInValuesAsTheyAre() {
+        assertParity(FORMAT, "login {FlowName=PlayerLogin,vRoleName=Li Lei|GM,vReason=kicked by admin,iZoneAreaID=3021}");
+    }
+
+    @Test
+    public void writesNonAsciiValuesAsUtf8() {
+        assertParity(FORMAT, "登录 {FlowName=PlayerLogin,vRoleName=李雷,iZoneAreaID=华东3021}");
+    }
+
+    @Test
+    public void letsLaterFormatEntriesOverrideTheDefaultInPlace() {
+        assertParity("FlowName=-,iZoneAreaID=0,iLevel=1,IZONEAREAID=7", "login {FlowName=PlayerLogin,iLevel=57}");
+    }
+
+    @Test
+    public void writesEveryRowOfAThreadFromItsOwnFields() {
+        final TlogEncoder encoder = new TlogEncoder(FLOW, FORMAT);
+        final String first = "login {FlowName=PlayerLogin,iZoneAreaID=3021,vRoleName=LiLei,iLevel=57,vReason=kicked}";
+        final String second = "login {FlowName=PlayerLogin,iZoneAreaID=3022}";
+
+        assertThat(encode(encoder, first)).isEqualTo(baseline(FLOW, FORMAT, first));
+        assertThat(encode(encoder, second)).isEqualTo(baseline(FLOW, FORMAT, second));
+    }
+
+    @Test
+    public void dropsTheSameMessages() {
+        final String[] dropped = {
+                "login without fields",
+                "login {iZoneAreaID=3021}",
+                "login {FlowName=PlayerLogout,iZoneAreaID=3021}",
+                "login } FlowName=PlayerLogin {",
+                // One block from the first to the last brace, its first key is not FlowName.
+                "2026/10/19 {server} login {FlowName=PlayerLogin,iZoneAreaID=3021}",
+        };
+        for (String message : dropped) {
+            assertThat(baseline(FLOW, FORMAT, message)).as(message).isNull();
+            assertThat(encode(new TlogEncoder(FLOW, FORMAT), message)).as(message).isNull();
+        }
+    }
+
+    @Test
+    public void dropsEverythingForAnEmptyFormat() {
+        assertThat(baseline(FLOW, " ", "login {FlowName=PlayerLogin}")).isNull();
+        assertThat(encode(new TlogEncoder(FLOW, " "), "login {FlowName=PlayerLogin}")).isNull();
+    }
+
+    @Test
+    public void sendsLineBreaksInValuesTheOldSenderDropped() {
+        // The only deliberate change: the old pattern did not match across line breaks and dropped the message.
+        final String message = "login {FlowName=PlayerLogin,vReason=kicked\r\nby admin}";
+        assertThat(baseline(FLOW, FORMAT, message)).isNull();
+
+        assertThat(encode(new TlogEncoder(FLOW, FORMAT), message)).isEqualTo("PlayerLogin|-|0|-|1|kicked  by admin\r\n");
+        assertThat(encode(new TlogEncoder(FLOW, FORMAT, true), message)).isEqualTo("PlayerLogin|-|0|-|1|kicked\r\nby admin\r\n");
+    }
+
+    private static void assertParity(String format, String message) {
+        final String expected = baseline(FLOW, format, message);
+        assertThat(expected).isNotNull();
+
+        final ByteBuf line = new LineEncoder(new TlogEncoder(FLOW, format)).encode(message(message));
+        try {
+            assertThat(ByteBufUtil.getBytes(line)).as(expected).isEqualTo(expected.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            line.release();
+        }
+    }
+
+    private static String encode(TlogEncoder encoder, String message) {
+        final ByteBuf line = new LineEncoder(encoder).encode(message(message));
+        if (line == null) {
+            return null;
+        }
+        try {
+            return line.toString(StandardCharsets.UTF_8);
+        } finally {
+            line.release();
+        }
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "gamesvr-12", new DateTime(2026, 10, 19, 12, 0, DateTimeZone.UTC));
+    }
+
+    /**
+     * The line {@code UDPSender_3#send} queued for a message, {@code null} where it logged and dropped it.
+     */
+    private static String baseline(String params, String result, String str) {
+        final StringBuilder splunkMessage = new StringBuilder();
+        try {
+            final LinkedHashMap<String, String> map = new LinkedHashMap<>();
+            for (String param : result.split(",")) {
+                final String[] innerStr = param.split("=");
+                map.put(innerStr[0].trim().toLowerCase(), innerStr[1]);
+            }
+
+            final Matcher matcher = Pattern.compile("\\{.*\\}").matcher(str);
+            if (!matcher.find()) {
+                return null;
+            }
+            final String logStr = matcher.group(0).replaceAll("\\{|\\}", "");
+            for (String log : logStr.split("\\s*,\\s*")) {
+                final String[] sList = log.split("\\s*=\\s*");
+                if (sList.length == 2) {
+                    if (map.containsKey(sList[0].trim().toLowerCase()) && !sList[1].isEmpty()) {
+                        map.put(sList[0].trim().toLowerCase(), sList[1]);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (entry.getKey().equals("flowname") && entry.getValue().isEmpty()) {
+                    splunkMessage.setLength(0);
+                    break;
+                }
+                if (entry.getKey().equals("flowname") && !entry.getValue().equals(params)) {
+                    splunkMessage.setLength(0);
+                    break;
+                }
+                if (splunkMessage.length() > 0) {
+                    splunkMessage.append("|");
+                }
+                splunkMessage.append(entry.getValue());
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return splunkMessage.length() > 0 ? splunkMessage.append("\r\n").toString() : null;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import com.graylog.splunk.output.testing.TcpSink;
+import com.graylog.splunk.output.tools.FaultProxy;
+import com.graylog.splunk.output.tools.LossReceiver;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.Future;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Scripted receiver faults behind {@link FaultProxy}: how long the senders take to get their
+ * throughput back and how many lines are lost on the way.
+ *
+ * The bounds are wall-clock times, so these run in the {@code integration} profile only:
+ * {@code mvn -P integration verify}.
+ */
+public class FaultScenariosIT {
+
+    private static final int QUEUE_SIZE = 100000;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void receiverDownDeliversQueuedLinesOnceItIsUp() throws Exception {
+        for (SenderMode mode : new SenderMode[]{SenderMode.PLATFORM_THREAD, SenderMode.EVENT_LOOP}) {
+            try (TcpSink sink = TcpSink.down()) {
+                final TCPSender sender = new TCPSender("127.0.0.1", sink.getPort(), QUEUE_SIZE, mode);
+                try {
+                    sender.initialize();
+                    final List<Future<Void>> futures = submit(sender, 0, 1000);
+                    // A few failed connection attempts.
+                    Thread.sleep(1500);
+                    assertThat(sender.getState()).isEqualTo(SenderState.DEGRADED);
+
+                    sink.start();
+                    final long up = System.nanoTime();
+                    awaitLines(sink, 1000);
+                    final long recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - up);
+
+                    // One reconnect interval, plus slack for a loaded machine.
+                    assertThat(recoveryMillis).as("recovery of %s", mode).isLessThan(3000);
+                    assertThat(sink.getLines()).as("lines of %s", mode).isEqualTo(1000);
+                    assertSucceeded(futures);
+                } finally {
+                    sender.stop(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void slowReadsDelayButDoNotLoseLines() throws Exception {
+        try (TcpSink sink = new TcpSink();
+             FaultProxy proxy = FaultProxy.start("tcp", 0, new InetSocketAddress("127.0.0.1", sink.getPort()),
+                     "--stall-every", "1", "--stall-for", "500", "--bandwidth", "4000000")) {
+            final TCPSender sender = new TCPSender("127.0.0.1", proxy.getPort(), QUEUE_SIZE, SenderMode.EVENT_LOOP);
+            try {
+                sender.initialize();
+                final List<Future<Void>> futures = new ArrayList<>();
+                final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2500);
+                int sent = 0;
+                while (System.nanoTime() - end < 0) {
+                    futures.addAll(submit(sender, sent, 500));
+                    sent += 500;
+                    Thread.sleep(10);
+                }
+
+                final long stoppedSending = System.nanoTime();
+                awaitLines(sink, sent);
+                final long catchUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stoppedSending);
+
+                assertThat(proxy.getStalls()).isGreaterThanOrEqualTo(2);
+                // At most one stall and the backlog of the capped bandwidth behind.
+                assertThat(catchUpMillis).isLessThan(5000);
+                assertThat(sink.getLines()).isEqualTo(sent);
+                assertSucceeded(futures);
+            } finally {
+                sender.stop(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void packetLossIsSeenByTheReceiver() throws Exception {
+        try (LossReceiver receiver = LossReceiver.start(0);
+             FaultProxy proxy = FaultProxy.start("udp", 0, new InetSocketAddress("127.0.0.1", receiver.getPort()),
+                     "--loss", "0.1", "--seed", "20261019")) {
+            final UDPSender udp = new UDPSender("127.0.0.1", proxy.getPort(), QUEUE_SIZE, SenderMode.EVENT_LOOP,
+                    new TokenBucket(20000, 0, 100, false), null);
+            final Sender sender = new SequencedSender(udp);
+            try {
+                sender.initialize();
+                awaitState(udp, SenderState.READY);
+                final int sent = 5000;
+                assertSucceeded(submit(sender, 0, sent));
+                awaitStable(receiver);
+
+                final long dropped = proxy.getLost();
+                assertThat(dropped).isBetween(sent / 20L, sent / 5L);
+                // Nothing is lost apart from what the proxy dropped.
+                assertThat(receiver.getReceived()).isEqualTo(sent - dropped);
+                // Losses after the last received line cannot be seen as gaps.
+                assertThat(receiver.getLost()).isBetween(dropped - 20, dropped);
+            } finally {
+                sender.stop(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void reconnectAfterResetRecoversThroughput() throws Exception {
+        try (TcpSink sink = new TcpSink();
+             FaultProxy proxy = FaultProxy.start("tcp", 0, new InetSocketAddress("127.0.0.1", sink.getPort()),
+                     // Not every second, or the reconnect would always fall into the next down time.
+                     "--reset-every", "2", "--down-for", "200")) {
+            final TCPSender sender = new TCPSender("127.0.0.1", proxy.getPort(), QUEUE_SIZE, SenderMode.PLATFORM_THREAD);
+            try {
+                sender.initialize();
+                awaitState(sender, SenderState.READY);
+
+                // About 2000 lines per second, watching for the longest time nothing arrives.
+                final List<Future<Void>> futures = new ArrayList<>();
+                final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(4500);
+                long lastLines = 0;
+                long lastProgress = System.nanoTime();
+                long longestGapNanos = 0;
+                int sent = 0;
+                while (System.nanoTime() - end < 0) {
+                    futures.addAll(submit(sender, sent, 20));
+                    sent += 20;
+                    Thread.sleep(10);
+                    final long now = System.nanoTime();
+                    if (sink.getLines() > lastLines) {
+                        lastLines = sink.getLines();
+                        lastProgress = now;
+                    }
+                    longestGapNanos = Math.max(longestGapNanos, now - lastProgress);
+                }
+                awaitDone(futures);
+                Thread.sleep(500);
+
+                assertThat(proxy.getResets()).isGreaterThanOrEqualTo(2);
+                // The reconnect interval is one second.
+                assertThat(TimeUnit.NANOSECONDS.toMillis(longestGapNanos)).isLessThan(2000);
+                // Only lines in the socket buffers when the connection is reset are lost.
+                assertThat(sink.getLines()).isGreaterThanOrEqualTo(sent * 95L / 100);
+            } finally {
+                sender.stop(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static List<Future<Void>> submit(Sender sender, int first, int count) {
+        final List<Future<Void>> futures = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            final ByteBuf line = Unpooled.copiedBuffer("2026/10/19-12:00:00.000 line " + i + " zone=3021\n", StandardCharsets.UTF_8);
+            futures.add(sender.submit(line));
+        }
+        return futures;
+    }
+
+    private static void awaitDone(List<Future<Void>> futures) throws InterruptedException {
+        for (Future<Void> future : futures) {
+            assertThat(future.await(TIMEOUT_MILLIS)).isTrue();
+        }
+    }
+
+    private static void assertSucceeded(List<Future<Void>> futures) throws InterruptedException {
+        awaitDone(futures);
+        for (Future<Void> future : futures) {
+            assertThat(future.isSuccess()).as("%s", future.cause()).isTrue();
+        }
+    }
+
+    private static void awaitLines(TcpSink sink, long lines) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (sink.getLines() < lines && System.nanoTime() - deadline < 0) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitState(Transport transport, SenderState state) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (transport.getState() != state && System.nanoTime() - deadline < 0) {
+            Thread.sleep(5);
+        }
+        assertThat(transport.getState()).isEqualTo(state);
+    }
+
+    private static void awaitStable(LossReceiver receiver) throws InterruptedException {
+        long received;
+        do {
+            received = receiver.getReceived();
+            Thread.sleep(300);
+        } while (receiver.getReceived() != received);
+    }
+}
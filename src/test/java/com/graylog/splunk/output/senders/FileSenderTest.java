@@ -0,0 +1,200 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSenderTest {
+
+    private static final String PATTERN = "'tlog.log'";
+    private static final int[] WEIGHTS = {1};
+    private static final int LINE_BYTES = 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesAcrossMappedRegions() throws Exception {
+        // More than one 16 MB region, with lines crossing the region boundary.
+        final int lines = 17 * 1024 + 7;
+        final FileSender sender = sender(PATTERN, 0, lines);
+        sender.initialize();
+        assertSucceeded(submit(sender, 0, lines));
+        sender.stop(10, TimeUnit.SECONDS);
+
+        final File file = new File(folder.getRoot(), "tlog.log");
+        assertThat(file.length()).isEqualTo((long) lines * LINE_BYTES);
+        assertLines(read(file), 0, lines);
+    }
+
+    @Test
+    public void continuesInNumberedFilesAtTheRollSize() throws Exception {
+        final FileSender sender = sender(PATTERN, 10 * LINE_BYTES, 100);
+        sender.initialize();
+        assertSucceeded(submit(sender, 0, 95));
+        sender.stop(10, TimeUnit.SECONDS);
+
+        assertThat(folder.getRoot().list()).hasSize(10);
+        final List<String> all = new ArrayList<>(read(new File(folder.getRoot(), "tlog.log")));
+        for (int part = 1; part < 10; part++) {
+            final File file = new File(folder.getRoot(), "tlog.log." + part);
+            assertThat(file.length()).isLessThanOrEqualTo(10L * LINE_BYTES);
+            all.addAll(read(file));
+        }
+        assertLines(all, 0, 95);
+    }
+
+    @Test
+    public void startsANewFileWhenTheNameChanges() throws Exception {
+        final FileSender sender = sender("'tlog_'yyyyMMddHHmmss'.log'", 0, 10);
+        sender.initialize();
+        assertSucceeded(submit(sender, 0, 1));
+        // The name is checked once a second.
+        Thread.sleep(1100);
+        assertSucceeded(submit(sender, 1, 1));
+        sender.stop(10, TimeUnit.SECONDS);
+
+        final String[] names = folder.getRoot().list();
+        assertThat(names).hasSize(2);
+        Arrays.sort(names);
+        assertLines(read(new File(folder.getRoot(), names[0])), 0, 1);
+        assertLines(read(new File(folder.getRoot(), names[1])), 1, 1);
+    }
+
+    @Test
+    public void stopWritesWhatIsQueuedAndTruncatesTheFile() throws Exception {
+        final FileSender sender = sender(PATTERN, 0, 10000);
+        sender.initialize();
+        final List<Future<Void>> futures = submit(sender, 0, 10000);
+        sender.stop(10, TimeUnit.SECONDS);
+
+        assertThat(sender.getState()).isEqualTo(SenderState.STOPPED);
+        assertSucceeded(futures);
+        final File file = new File(folder.getRoot(), "tlog.log");
+        // Nothing of the zero-filled mapped region is left.
+        assertThat(file.length()).isEqualTo(10000L * LINE_BYTES);
+        assertLines(read(file), 0, 10000);
+    }
+
+    @Test
+    public void stopGivesUpTheQueueWithinTheTimeout() throws Exception {
+        final FileSender sender = sender(PATTERN, 0, 100000);
+        sender.initialize();
+        final List<Future<Void>> futures = submit(sender, 0, 100000);
+        final long start = System.nanoTime();
+        sender.stop(100, TimeUnit.MILLISECONDS);
+        final long stopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The timeout plus scheduling slack, not the time to write 100 MB.
+        assertThat(stopMillis).isLessThan(1000);
+        for (Future<Void> future : futures) {
+            assertThat(future.await(10000)).isTrue();
+        }
+    }
+
+    @Test
+    public void continuesAfterTheLastLineOfAFileNotClosedCleanly() throws Exception {
+        final File file = new File(folder.getRoot(), "tlog.log");
+        final byte[] crashed = new byte[3 * LINE_BYTES];
+        System.arraycopy(line(0), 0, crashed, 0, LINE_BYTES);
+        Files.write(file.toPath(), crashed);
+
+        final FileSender sender = sender(PATTERN, 0, 10);
+        sender.initialize();
+        assertSucceeded(submit(sender, 1, 2));
+        sender.stop(10, TimeUnit.SECONDS);
+
+        assertThat(file.length()).isEqualTo(3L * LINE_BYTES);
+        assertLines(read(file), 0, 3);
+    }
+
+    @Test
+    public void restartedSenderAppendsToTheSameFile() throws Exception {
+        for (int run = 0; run < 3; run++) {
+            final FileSender sender = sender(PATTERN, 0, 100);
+            sender.initialize();
+            assertSucceeded(submit(sender, run * 100, 100));
+            sender.stop(10, TimeUnit.SECONDS);
+        }
+
+        assertLines(read(new File(folder.getRoot(), "tlog.log")), 0, 300);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnInvalidPattern() {
+        sender("'tlog_'yyyyMMddHHq'.log'", 0, 10);
+    }
+
+    private FileSender sender(String pattern, long rollBytes, int queueSize) {
+        return new FileSender(folder.getRoot().getPath(), pattern, rollBytes, 100, queueSize, WEIGHTS);
+    }
+
+    private static List<Future<Void>> submit(Sender sender, int first, int count) {
+        final List<Future<Void>> futures = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            final ByteBuf line = Unpooled.wrappedBuffer(line(i));
+            futures.add(sender.submit(line));
+        }
+        return futures;
+    }
+
+    /**
+     * A line of exactly {@value #LINE_BYTES} bytes holding its number.
+     */
+    private static byte[] line(int i) {
+        final byte[] line = new byte[LINE_BYTES];
+        Arrays.fill(line, (byte) 'x');
+        final byte[] number = (i + "|").getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(number, 0, line, 0, number.length);
+        line[LINE_BYTES - 1] = '\n';
+        return line;
+    }
+
+    private static void assertSucceeded(List<Future<Void>> futures) throws InterruptedException {
+        for (Future<Void> future : futures) {
+            assertThat(future.await(10000)).isTrue();
+            assertThat(future.isSuccess()).as("%s", future.cause()).isTrue();
+        }
+    }
+
+    private static List<String> read(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+    }
+
+    private static void assertLines(List<String> lines, int first, int count) {
+        assertThat(lines).hasSize(count);
+        for (int i = 0; i < count; i++) {
+            assertThat(lines.get(i)).startsWith((first + i) + "|").hasSize(LINE_BYTES - 1);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LineQueueTest {
+
+    private static final int[] WEIGHTS = {1, 3, 1};
+
+    @Test
+    public void servesLowerLanesByWeight() {
+        for (boolean blocking : new boolean[]{true, false}) {
+            final LineQueue queue = new LineQueue(100, WEIGHTS, blocking);
+            for (int i = 0; i < 8; i++) {
+                assertThat(queue.offer(line(1), 1)).isTrue();
+                assertThat(queue.offer(line(2), 2)).isTrue();
+            }
+
+            assertThat(drain(queue)).as("blocking=%s", blocking).isEqualTo("1112111211222222");
+        }
+    }
+
+    @Test
+    public void takesTheTopLaneFirstWheneverItHasALine() {
+        final LineQueue queue = new LineQueue(100, WEIGHTS, false);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(line(1), 1);
+            queue.offer(line(2), 2);
+        }
+
+        final StringBuilder order = new StringBuilder();
+        order.append(lane(queue.poll()));
+        queue.offer(line(0), 0);
+        queue.offer(line(0), 0);
+        order.append(lane(queue.poll())).append(lane(queue.poll())).append(lane(queue.poll()));
+        queue.offer(line(0), 0);
+        order.append(drain(queue));
+
+        assertThat(order.toString()).isEqualTo("10010121222");
+    }
+
+    @Test
+    public void boundsEveryLaneOnItsOwn() {
+        final LineQueue queue = new LineQueue(2, WEIGHTS, false);
+
+        assertThat(queue.offer(line(2), 2)).isTrue();
+        assertThat(queue.offer(line(2), 2)).isTrue();
+        assertThat(queue.offer(line(2), 2)).isFalse();
+        // Bulk traffic does not take the room of the top lane.
+        assertThat(queue.offer(line(0), 0)).isTrue();
+        assertThat(queue.size()).isEqualTo(3);
+        assertThat(queue.size(0)).isEqualTo(1);
+        assertThat(queue.size(2)).isEqualTo(2);
+    }
+
+    @Test
+    public void mapsPrioritiesPastTheLastLaneToIt() {
+        final LineQueue queue = new LineQueue(10, WEIGHTS, false);
+
+        assertThat(queue.levels()).isEqualTo(3);
+        assertThat(queue.laneOf(-1)).isEqualTo(0);
+        assertThat(queue.laneOf(1)).isEqualTo(1);
+        assertThat(queue.laneOf(7)).isEqualTo(2);
+    }
+
+    @Test
+    public void isAFifoWithASingleLane() {
+        final LineQueue queue = new LineQueue(10, new int[]{1}, true);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(line(i), 0);
+        }
+
+        assertThat(drain(queue)).isEqualTo("01234");
+    }
+
+    @Test
+    public void blockingPollWaitsForALine() throws InterruptedException {
+        final LineQueue queue = new LineQueue(10, WEIGHTS, true);
+
+        final long start = System.nanoTime();
+        assertThat(queue.poll(50, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.offer(line(2), 2);
+            }
+        }).start();
+        assertThat(lane(queue.take())).isEqualTo('2');
+        assertThat(queue.poll()).isNull();
+    }
+
+    private static PendingLine line(int lane) {
+        return new PendingLine(Unpooled.wrappedBuffer(new byte[]{(byte) ('0' + lane)}), null);
+    }
+
+    private static char lane(PendingLine line) {
+        return (char) line.getLine().getByte(0);
+    }
+
+    private static String drain(LineQueue queue) {
+        final StringBuilder order = new StringBuilder();
+        PendingLine line;
+        while ((line = queue.poll()) != null) {
+            order.append(lane(line));
+        }
+        return order.toString();
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class SharedTransportsTest {
+
+    private final StagingQuota quota = new StagingArea(1024 * 1024).newQuota(1024 * 1024);
+
+    @Test
+    public void closingATransportDoesNotBlockOtherKeys() throws Exception {
+        final SharedTransports transports = new SharedTransports();
+        final StubTransport slow = new StubTransport();
+        slow.stopBlocked = new CountDownLatch(1);
+        final SharedTransports.Lease lease = transports.acquire("slow", slow, quota);
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    lease.stop(10, TimeUnit.SECONDS);
+                }
+            });
+            assertThat(slow.stopping.await(5, TimeUnit.SECONDS)).isTrue();
+
+            final StubTransport other = new StubTransport();
+            final FutureTask<SharedTransports.Lease> otherLease = acquire(executor, transports, "other", other);
+            assertThat(otherLease.get(1, TimeUnit.SECONDS).getState()).isEqualTo(SenderState.READY);
+
+            // The same key waits until the old transport is closed, then gets a new one.
+            final StubTransport reopened = new StubTransport();
+            final FutureTask<SharedTransports.Lease> reopenedLease = acquire(executor, transports, "slow", reopened);
+            try {
+                reopenedLease.get(200, TimeUnit.MILLISECONDS);
+                fail("acquired a key that is still closing");
+            } catch (TimeoutException expected) {
+                // still closing
+            }
+            slow.stopBlocked.countDown();
+            reopenedLease.get(5, TimeUnit.SECONDS).submit(line());
+            assertThat(reopened.submitted).isEqualTo(1);
+            assertThat(slow.submitted).isZero();
+        } finally {
+            slow.stopBlocked.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharesTheTransportOfAnEqualKey() {
+        final SharedTransports transports = new SharedTransports();
+        final SharedTransports.Lease first = transports.acquire(udpKey(0), quota);
+        final SharedTransports.Lease second = transports.acquire(udpKey(0), quota);
+        final SharedTransports.Lease otherLane = transports.acquire(udpKey(1), quota);
+        try {
+            assertThat(transports.size()).isEqualTo(2);
+            assertThat(first.getSharedBy()).isEqualTo(2);
+            assertThat(second.getSharedBy()).isEqualTo(2);
+            assertThat(otherLane.getSharedBy()).isEqualTo(1);
+            // Lanes to the same receiver are paced together.
+            assertThat(otherLane.getPacer()).isSameAs(first.getPacer());
+        } finally {
+            first.stop(1, TimeUnit.SECONDS);
+            second.stop(1, TimeUnit.SECONDS);
+            otherLane.stop(1, TimeUnit.SECONDS);
+        }
+        assertThat(transports.size()).isZero();
+    }
+
+    @Test
+    public void onlyTheLastReleaseStopsTheTransport() {
+        final SharedTransports transports = new SharedTransports();
+        final StubTransport transport = new StubTransport();
+        final SharedTransports.Lease first = transports.acquire("key", transport, quota);
+        final StubTransport unused = new StubTransport();
+        final SharedTransports.Lease second = transports.acquire("key", unused, quota);
+
+        first.stop(1, TimeUnit.SECONDS);
+        assertThat(transport.stopped).isZero();
+        assertThat(first.getState()).isEqualTo(SenderState.STOPPED);
+        assertThat(second.getSharedBy()).isEqualTo(1);
+        second.submit(line());
+        assertThat(transport.submitted).isEqualTo(1);
+
+        second.stop(1, TimeUnit.SECONDS);
+        assertThat(transport.stopped).isEqualTo(1);
+        assertThat(unused.stopped).isZero();
+        assertThat(transports.size()).isZero();
+    }
+
+    @Test
+    public void releasesALeaseOnlyOnce() {
+        final SharedTransports transports = new SharedTransports();
+        final StubTransport transport = new StubTransport();
+        final SharedTransports.Lease first = transports.acquire("key", transport, quota);
+        final SharedTransports.Lease second = transports.acquire("key", new StubTransport(), quota);
+
+        first.stop(1, TimeUnit.SECONDS);
+        first.stop(1, TimeUnit.SECONDS);
+
+        assertThat(transport.stopped).isZero();
+        assertThat(second.getSharedBy()).isEqualTo(1);
+        second.stop(1, TimeUnit.SECONDS);
+        assertThat(transport.stopped).isEqualTo(1);
+        second.stop(1, TimeUnit.SECONDS);
+        assertThat(transport.stopped).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentLeasesNeverUseAStoppedTransport() throws Exception {
+        final SharedTransports transports = new SharedTransports();
+        final List<StubTransport> created = Collections.synchronizedList(new ArrayList<StubTransport>());
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<FutureTask<Void>> tasks = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < 500; i++) {
+                            final StubTransport transport = new StubTransport();
+                            created.add(transport);
+                            final SharedTransports.Lease lease = transports.acquire("key", transport, quota);
+                            lease.submit(line());
+                            lease.stop(1, TimeUnit.SECONDS);
+                        }
+                        return null;
+                    }
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+            start.countDown();
+            for (FutureTask<Void> task : tasks) {
+                task.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(transports.size()).isZero();
+        int opened = 0;
+        for (StubTransport transport : created) {
+            assertThat(transport.submittedWhileStopping).isZero();
+            // A transport was opened if a lease sent through it, and then stopped exactly once.
+            assertThat(transport.stopped).isEqualTo(transport.submitted > 0 ? 1 : 0);
+            opened += transport.stopped;
+        }
+        assertThat(opened).isBetween(1, threads * 500);
+    }
+
+    private static TransportKey udpKey(int lane) {
+        return new TransportKey(false, "127.0.0.1", 9, lane, 1000, SenderMode.EVENT_LOOP, 1000, 0, 100, false, new int[]{1}, null);
+    }
+
+    private FutureTask<SharedTransports.Lease> acquire(ExecutorService executor, final SharedTransports transports,
+                                                       final String key, final Transport sender) {
+        final FutureTask<SharedTransports.Lease> task = new FutureTask<>(new Callable<SharedTransports.Lease>() {
+            @Override
+            public SharedTransports.Lease call() {
+                return transports.acquire(key, sender, quota);
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
+    private static ByteBuf line() {
+        return Unpooled.copiedBuffer(new byte[]{'x', '\n'});
+    }
+
+    /**
+     * Counts what it is asked to do, its stop can be held up.
+     */
+    static class StubTransport implements Transport {
+
+        final CountDownLatch stopping = new CountDownLatch(1);
+        volatile CountDownLatch stopBlocked = new CountDownLatch(0);
+        volatile int initialized;
+        volatile int stopped;
+        volatile int submitted;
+        volatile int submittedWhileStopping;
+
+        @Override
+        public void initialize() {
+            initialized++;
+        }
+
+        @Override
+        public void stop(long timeout, TimeUnit unit) {
+            stopping.countDown();
+            try {
+                stopBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stopped++;
+        }
+
+        @Override
+        public Future<Void> submit(ByteBuf line) {
+            return submit(line, null, LOWEST_PRIORITY);
+        }
+
+        @Override
+        public Future<Void> submit(ByteBuf line, int priority) {
+            return submit(line, null, priority);
+        }
+
+        @Override
+        public synchronized Future<Void> submit(ByteBuf line, StagingQuota quota, int priority) {
+            submitted++;
+            if (stopping.getCount() == 0) {
+                submittedWhileStopping++;
+            }
+            line.release();
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+        }
+
+        @Override
+        public SenderState getState() {
+            return stopped > 0 ? SenderState.STOPPED : SenderState.READY;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return 0;
+        }
+
+        @Override
+        public int getQueueDepth(int priority) {
+            return 0;
+        }
+    }
+}
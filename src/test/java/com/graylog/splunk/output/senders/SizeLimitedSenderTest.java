@@ -0,0 +1,227 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import com.codahale.metrics.Counter;
+import com.google.common.base.Strings;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SizeLimitedSenderTest {
+
+    private static final int MAX_SIZE = 100;
+    // "#frag:" + 16 hex + ":" + 10 digits + "/" + 10 digits + " "
+    private static final int FRAGMENT_PAYLOAD = MAX_SIZE - 45;
+    private static final Pattern FRAGMENT = Pattern.compile("#frag:([0-9a-f]{1,16}):(\\d+)/(\\d+) (.*)", Pattern.DOTALL);
+
+    private final RecordingSender target = new RecordingSender();
+    private final Counter oversized = new Counter();
+
+    @Test
+    public void passesLinesThatFitUntouched() {
+        final ByteBuf line = line(Strings.repeat("x", MAX_SIZE));
+
+        assertThat(sender(OversizePolicy.DROP).submit(line).isSuccess()).isTrue();
+
+        assertThat(target.lines).containsExactly(Strings.repeat("x", MAX_SIZE));
+        assertThat(oversized.getCount()).isZero();
+    }
+
+    @Test
+    public void truncatesToTheMaximumSize() {
+        final String text = Strings.repeat("0123456789", 15);
+
+        assertThat(sender(OversizePolicy.TRUNCATE).submit(line(text)).isSuccess()).isTrue();
+
+        final String truncated = text.substring(0, MAX_SIZE - 14) + " [TRUNCATED]\r\n";
+        assertThat(target.lines).containsExactly(truncated);
+        assertThat(truncated.length()).isEqualTo(MAX_SIZE);
+        assertThat(oversized.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void truncatesBeforeAMultiByteCharacter() {
+        // 3 bytes each, the cut at byte 86 falls into the 29th character.
+        final String text = Strings.repeat("区", 50);
+
+        sender(OversizePolicy.TRUNCATE).submit(line(text));
+
+        assertThat(target.lines).containsExactly(Strings.repeat("区", 28) + " [TRUNCATED]\r\n");
+    }
+
+    @Test
+    public void dropsOversizedLines() {
+        final ByteBuf line = line(Strings.repeat("x", MAX_SIZE + 1));
+
+        final Future<Void> future = sender(OversizePolicy.DROP).submit(line);
+
+        assertThat(future.isSuccess()).isFalse();
+        assertThat(future.cause()).hasMessageContaining("maximum datagram size");
+        assertThat(line.refCnt()).isZero();
+        assertThat(target.lines).isEmpty();
+        assertThat(oversized.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void splitsOversizedLinesIntoNumberedFragments() {
+        final String text = Strings.repeat("0123456789", 15) + "\r\n";
+        final ByteBuf line = line(text);
+
+        final Future<Void> future = sender(OversizePolicy.FRAGMENT).submit(line);
+
+        assertThat(future.isSuccess()).isTrue();
+        assertThat(line.refCnt()).isZero();
+        assertThat(target.lines).hasSize(3);
+        final StringBuilder reassembled = new StringBuilder();
+        String id = null;
+        for (int i = 0; i < target.lines.size(); i++) {
+            final String fragment = target.lines.get(i);
+            assertThat(fragment.length()).isLessThanOrEqualTo(MAX_SIZE);
+            final Matcher matcher = FRAGMENT.matcher(fragment);
+            assertThat(matcher.matches()).as(fragment).isTrue();
+            if (id == null) {
+                id = matcher.group(1);
+            }
+            assertThat(matcher.group(1)).isEqualTo(id);
+            assertThat(matcher.group(2)).isEqualTo(String.valueOf(i));
+            assertThat(matcher.group(3)).isEqualTo("3");
+            assertThat(matcher.group(4)).hasSize(i < 2 ? FRAGMENT_PAYLOAD : text.length() - 2 * FRAGMENT_PAYLOAD);
+            reassembled.append(matcher.group(4));
+        }
+        assertThat(reassembled.toString()).isEqualTo(text);
+        assertThat(oversized.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void givesEveryFragmentedLineItsOwnId() {
+        final SizeLimitedSender sender = sender(OversizePolicy.FRAGMENT);
+
+        sender.submit(line(Strings.repeat("a", MAX_SIZE + 1)));
+        sender.submit(line(Strings.repeat("b", MAX_SIZE + 1)));
+
+        assertThat(target.lines).hasSize(4);
+        final List<String> ids = new ArrayList<>();
+        for (String fragment : target.lines) {
+            final Matcher matcher = FRAGMENT.matcher(fragment);
+            assertThat(matcher.matches()).isTrue();
+            ids.add(matcher.group(1));
+        }
+        assertThat(ids.get(0)).isEqualTo(ids.get(1)).isNotEqualTo(ids.get(2));
+        assertThat(ids.get(2)).isEqualTo(ids.get(3));
+    }
+
+    @Test
+    public void failsTheLineIfOneFragmentFails() {
+        target.failAt = 1;
+
+        final Future<Void> future = sender(OversizePolicy.FRAGMENT).submit(line(Strings.repeat("x", 3 * FRAGMENT_PAYLOAD)));
+
+        assertThat(future.isDone()).isTrue();
+        assertThat(future.isSuccess()).isFalse();
+        assertThat(future.cause()).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void dropsOversizedLinesBeforeTheyAreNumbered() {
+        final SizeLimitedSender sender = new SizeLimitedSender(new SequencedSender(target),
+                MAX_SIZE - SequencedSender.MAX_PREFIX_LENGTH, OversizePolicy.DROP, oversized);
+
+        sender.submit(line("first"));
+        sender.submit(line(Strings.repeat("x", MAX_SIZE)));
+        sender.submit(line("second"));
+
+        assertThat(target.lines).hasSize(2);
+        assertThat(target.lines.get(0)).matches("#[0-9a-f]+:0 first");
+        assertThat(target.lines.get(1)).matches("#[0-9a-f]+:1 second");
+    }
+
+    @Test
+    public void numbersEveryFragmentWithinTheMaximumSize() {
+        final SizeLimitedSender sender = new SizeLimitedSender(new SequencedSender(target),
+                MAX_SIZE - SequencedSender.MAX_PREFIX_LENGTH, OversizePolicy.FRAGMENT, oversized);
+
+        sender.submit(line(Strings.repeat("x", MAX_SIZE)));
+
+        assertThat(target.lines).hasSize(4);
+        for (int i = 0; i < target.lines.size(); i++) {
+            assertThat(target.lines.get(i)).matches("#[0-9a-f]+:" + i + " #frag:[0-9a-f]+:" + i + "/4 x+");
+            assertThat(target.lines.get(i).length()).isLessThanOrEqualTo(MAX_SIZE);
+        }
+    }
+
+    private SizeLimitedSender sender(OversizePolicy policy) {
+        return new SizeLimitedSender(target, MAX_SIZE, policy, oversized);
+    }
+
+    private static ByteBuf line(String text) {
+        return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Completes every line right away, failing the one at {@code failAt}.
+     */
+    private static class RecordingSender implements Sender {
+        private final List<String> lines = new ArrayList<>();
+        private int failAt = -1;
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public void stop(long timeout, TimeUnit unit) {
+        }
+
+        @Override
+        public Future<Void> submit(ByteBuf line) {
+            return submit(line, LOWEST_PRIORITY);
+        }
+
+        @Override
+        public Future<Void> submit(ByteBuf line, int priority) {
+            final boolean fail = lines.size() == failAt;
+            lines.add(line.toString(StandardCharsets.UTF_8));
+            line.release();
+            return fail
+                    ? ImmediateEventExecutor.INSTANCE.<Void>newFailedFuture(new IOException("Connection refused"))
+                    : ImmediateEventExecutor.INSTANCE.<Void>newSucceededFuture(null);
+        }
+
+        @Override
+        public SenderState getState() {
+            return SenderState.READY;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.senders;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TokenBucketTest {
+
+    @Test
+    public void neverWaitsWithoutLimits() {
+        final TokenBucket bucket = new TokenBucket(0, 0, 100, false);
+
+        assertThat(bucket.isLimited()).isFalse();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(bucket.reserve(65000)).isZero();
+        }
+        assertThat(bucket.getWaitNanos()).isZero();
+    }
+
+    @Test
+    public void letsABurstThroughThenPacesPackets() {
+        final long start = System.nanoTime();
+        // 10 packets per second, a burst of one second.
+        final TokenBucket bucket = new TokenBucket(10, 0, 1000, false);
+        final long[] delays = new long[12];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = bucket.reserve(100);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        assertThat(bucket.isLimited()).isTrue();
+        for (int i = 0; i < 10; i++) {
+            assertThat(delays[i]).isZero();
+        }
+        assertDelay(delays[10], 100, elapsed);
+        assertDelay(delays[11], 200, elapsed);
+        assertThat(bucket.getWaitNanos()).isEqualTo(delays[10] + delays[11]);
+    }
+
+    @Test
+    public void pacesBytes() {
+        final long start = System.nanoTime();
+        final TokenBucket bucket = new TokenBucket(0, 1000, 1000, false);
+        final long first = bucket.reserve(1000);
+        final long second = bucket.reserve(500);
+        final long elapsed = System.nanoTime() - start;
+
+        assertThat(first).isZero();
+        assertDelay(second, 500, elapsed);
+    }
+
+    @Test
+    public void waitsForTheSlowerOfBothLimits() {
+        final long start = System.nanoTime();
+        final TokenBucket bucket = new TokenBucket(1000, 1000, 1000, false);
+        final long first = bucket.reserve(1000);
+        final long second = bucket.reserve(100);
+        final long elapsed = System.nanoTime() - start;
+
+        assertThat(first).isZero();
+        // Packets are plenty, bytes are not.
+        assertDelay(second, 100, elapsed);
+    }
+
+    @Test
+    public void adaptiveRateFallsOnLossAndRecoversSlowly() {
+        final TokenBucket bucket = new TokenBucket(1000, 0, 100, true);
+
+        bucket.onLossReport(0.1);
+        assertThat(bucket.getPacketsPerSecond()).isCloseTo(700, within(0.001));
+
+        for (int i = 0; i < 20; i++) {
+            bucket.onLossReport(0.5);
+        }
+        assertThat(bucket.getPacketsPerSecond()).isCloseTo(50, within(0.001));
+
+        bucket.onLossReport(0.0);
+        assertThat(bucket.getPacketsPerSecond()).isCloseTo(100, within(0.001));
+        for (int i = 0; i < 100; i++) {
+            bucket.onLossReport(0.0);
+        }
+        assertThat(bucket.getPacketsPerSecond()).isCloseTo(1000, within(0.001));
+    }
+
+    @Test
+    public void ignoresLossReportsUnlessAdaptive() {
+        final TokenBucket bucket = new TokenBucket(1000, 0, 100, false);
+
+        bucket.onLossReport(0.5);
+        assertThat(bucket.getPacketsPerSecond()).isCloseTo(1000, within(0.001));
+    }
+
+    /**
+     * The delay is the expected one, less the tokens that came back while the test ran.
+     */
+    private static void assertDelay(long delayNanos, long expectedMillis, long elapsedNanos) {
+        final long expected = TimeUnit.MILLISECONDS.toNanos(expectedMillis);
+        assertThat(delayNanos).isBetween(expected - elapsedNanos, expected);
+    }
+}
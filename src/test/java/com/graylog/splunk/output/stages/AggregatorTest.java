@@ -0,0 +1,124 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.stages;
+
+import com.graylog.splunk.output.encoders.FieldProjection;
+import com.graylog.splunk.output.encoders.KeyValueEncoder;
+import com.graylog.splunk.output.encoders.LineEncoder;
+import com.graylog.splunk.output.encoders.TlogEncoder;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AggregatorTest {
+
+    private static final String ONLINE_FORMAT = "FlowName=,iZoneAreaID=0,window=,count=0,online=0,online_sum=0,online_min=0,online_max=0";
+
+    @Test
+    public void aggregatesTlogFieldsAndEncodesRollupsAsTlog() {
+        final TlogEncoder tlog = new TlogEncoder("OnlineCount", ONLINE_FORMAT);
+        final Aggregator aggregator = new Aggregator(tlog, Collections.singletonList("iZoneAreaID"),
+                Collections.singletonList("online"), 60);
+
+        assertThat(aggregator.add(tlog("OnlineCount", 3021, 5))).isTrue();
+        assertThat(aggregator.add(tlog("OnlineCount", 3021, 7))).isTrue();
+        assertThat(aggregator.add(tlog("OnlineCount", 3022, 1))).isTrue();
+        // Rejected by the tlog encoder, so not aggregated either.
+        assertThat(aggregator.add(tlog("PlayerLogin", 3021, 100))).isFalse();
+
+        assertThat(encode(new LineEncoder(tlog), aggregator.flush())).containsExactlyInAnyOrder(
+                "OnlineCount|3021|60s|2|0|12|5|7\r\n",
+                "OnlineCount|3022|60s|1|0|1|1|1\r\n");
+    }
+
+    @Test
+    public void appendsRollupFieldsTheFlowHasNoColumnsFor() {
+        final TlogEncoder tlog = new TlogEncoder("OnlineCount", "FlowName=,iZoneAreaID=0,online=0");
+        final Aggregator aggregator = new Aggregator(tlog, Collections.singletonList("iZoneAreaID"),
+                Collections.singletonList("online"), 60);
+
+        aggregator.add(tlog("OnlineCount", 3021, 5));
+        aggregator.add(tlog("OnlineCount", 3021, 7));
+
+        assertThat(encode(new LineEncoder(tlog), aggregator.flush())).containsExactly(
+                "OnlineCount|3021|0|window=60s|count=2|online_sum=12|online_min=5|online_max=7\r\n");
+    }
+
+    @Test
+    public void sendsOnlyTheFieldsOfRegularTlogMessages() {
+        final TlogEncoder tlog = new TlogEncoder("OnlineCount", "FlowName=,iZoneAreaID=0");
+
+        assertThat(encode(new LineEncoder(tlog), Collections.singletonList(tlog("OnlineCount", 3021, 5))))
+                .containsExactly("OnlineCount|3021\r\n");
+    }
+
+    @Test
+    public void aggregatesMessageFieldsWithoutTlog() {
+        final KeyValueEncoder keyValue = new KeyValueEncoder(FieldProjection.of("zone,count,latency_sum,latency_max", null));
+        final Aggregator aggregator = new Aggregator(keyValue, Collections.singletonList("zone"),
+                Collections.singletonList("latency"), 60);
+
+        aggregator.add(message("3021", 1.5));
+        aggregator.add(message("3021", 2.5));
+
+        final List<String> lines = encode(new LineEncoder(keyValue), aggregator.flush());
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).endsWith(" rollup original_source=gamesvr-12 zone=3021 count=2 latency_sum=4 latency_max=2.5\r\n");
+    }
+
+    @Test
+    public void startsANewWindowAfterAFlush() {
+        final KeyValueEncoder keyValue = new KeyValueEncoder(FieldProjection.of(null, null));
+        final Aggregator aggregator = new Aggregator(keyValue, Collections.singletonList("zone"),
+                Collections.singletonList("latency"), 3600);
+
+        aggregator.add(message("3021", 1));
+        assertThat(aggregator.rotateIfDue()).isNull();
+        assertThat(aggregator.flush()).hasSize(1);
+        assertThat(aggregator.flush()).isEmpty();
+    }
+
+    private static Message tlog(String flow, int zone, int online) {
+        return new Message("tlog {FlowName=" + flow + ",iZoneAreaID=" + zone + ",online=" + online + "}",
+                "gamesvr-12", DateTime.now());
+    }
+
+    private static Message message(String zone, double latency) {
+        final Message message = new Message("PlayerLogin", "gamesvr-12", DateTime.now());
+        message.addField("zone", zone);
+        message.addField("latency", latency);
+        return message;
+    }
+
+    private static List<String> encode(LineEncoder encoder, List<Message> rollups) {
+        final String[] lines = new String[rollups.size()];
+        for (int i = 0; i < lines.length; i++) {
+            final ByteBuf line = encoder.encode(rollups.get(i));
+            lines[i] = line.toString(StandardCharsets.UTF_8);
+            line.release();
+        }
+        return Arrays.asList(lines);
+    }
+}
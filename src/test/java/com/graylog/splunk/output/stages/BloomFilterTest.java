@@ -0,0 +1,101 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.stages;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BloomFilterTest {
+
+    private static final int CAPACITY = 10000;
+
+    @Test
+    public void findsEverythingPut() {
+        final BloomFilter filter = new BloomFilter(CAPACITY, 0.01);
+        for (long i = 0; i < CAPACITY; i++) {
+            filter.put(hash(i));
+        }
+
+        for (long i = 0; i < CAPACITY; i++) {
+            assertThat(filter.mightContain(hash(i))).isTrue();
+        }
+    }
+
+    @Test
+    public void keepsFalsePositivesNearTheWantedRatioAtCapacity() {
+        final BloomFilter filter = new BloomFilter(CAPACITY, 0.01);
+        for (long i = 0; i < CAPACITY; i++) {
+            filter.put(hash(i));
+        }
+
+        int falsePositives = 0;
+        final int probes = 100000;
+        for (long i = CAPACITY; i < CAPACITY + probes; i++) {
+            if (filter.mightContain(hash(i))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / (double) probes).isLessThan(0.02);
+    }
+
+    @Test
+    public void isEmptyAfterClear() {
+        final BloomFilter filter = new BloomFilter(CAPACITY, 0.01);
+        for (long i = 0; i < CAPACITY; i++) {
+            filter.put(hash(i));
+        }
+        filter.clear();
+
+        for (long i = 0; i < CAPACITY; i++) {
+            assertThat(filter.mightContain(hash(i))).isFalse();
+        }
+    }
+
+    @Test
+    public void losesNoBitsToConcurrentPuts() throws InterruptedException {
+        final BloomFilter filter = new BloomFilter(CAPACITY, 0.01);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long first = t * (long) CAPACITY / 4;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (long i = first; i < first + CAPACITY / 4; i++) {
+                        filter.put(hash(i));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (long i = 0; i < CAPACITY; i++) {
+            assertThat(filter.mightContain(hash(i))).isTrue();
+        }
+    }
+
+    private static long hash(long value) {
+        return Hash64.mix(Hash64.combine(Hash64.seed(), value));
+    }
+}
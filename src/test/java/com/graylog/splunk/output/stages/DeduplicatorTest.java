@@ -0,0 +1,94 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.stages;
+
+import com.graylog.splunk.output.encoders.FieldProjection;
+import com.graylog.splunk.output.encoders.KeyValueEncoder;
+import com.graylog.splunk.output.encoders.LineEncoder;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeduplicatorTest {
+
+    private final KeyValueEncoder keyValue = new KeyValueEncoder(FieldProjection.of(null, null));
+
+    @Test
+    public void dropsRepeatsOfTheSameFields() {
+        final Deduplicator deduplicator = new Deduplicator(keyValue, Collections.<String>emptyList(), 60, 1000);
+
+        assertThat(deduplicator.isDuplicate(message("3021"))).isFalse();
+        // Another ID and timestamp, same content.
+        assertThat(deduplicator.isDuplicate(message("3021"))).isTrue();
+        assertThat(deduplicator.isDuplicate(message("3022"))).isFalse();
+    }
+
+    @Test
+    public void flushSendsTheSummaryThroughTheEncoder() {
+        final Deduplicator deduplicator = new Deduplicator(keyValue, Collections.singletonList("zone"), 60, 1000);
+        deduplicator.isDuplicate(message("3021"));
+        deduplicator.isDuplicate(message("3021"));
+        deduplicator.isDuplicate(message("3021"));
+
+        final Message summary = deduplicator.flush();
+        assertThat(summary).isNotNull();
+        assertThat(summary.getField("suppressed")).isEqualTo(2L);
+        assertThat(encode(summary)).contains(" dedup ").endsWith(" window=60s suppressed=2\r\n");
+    }
+
+    @Test
+    public void hasNoSummaryIfNothingWasSuppressed() {
+        final Deduplicator deduplicator = new Deduplicator(keyValue, Collections.singletonList("zone"), 60, 1000);
+        deduplicator.isDuplicate(message("3021"));
+
+        assertThat(deduplicator.rotateIfDue()).isNull();
+        assertThat(deduplicator.flush()).isNull();
+    }
+
+    @Test
+    public void forgetsLinesAfterTwoWindows() {
+        final Deduplicator deduplicator = new Deduplicator(keyValue, Collections.singletonList("zone"), 60, 1000);
+        deduplicator.isDuplicate(message("3021"));
+
+        deduplicator.flush();
+        assertThat(deduplicator.isDuplicate(message("3021"))).isTrue();
+        deduplicator.flush();
+        deduplicator.flush();
+        assertThat(deduplicator.isDuplicate(message("3021"))).isFalse();
+    }
+
+    private static Message message(String zone) {
+        final Message message = new Message("PlayerLogin", "gamesvr-12", DateTime.now());
+        message.addField("zone", zone);
+        return message;
+    }
+
+    private String encode(Message message) {
+        final ByteBuf line = new LineEncoder(keyValue).encode(message);
+        try {
+            return line.toString(StandardCharsets.UTF_8);
+        } finally {
+            line.release();
+        }
+    }
+}
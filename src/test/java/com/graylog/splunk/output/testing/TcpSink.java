@@ -0,0 +1,135 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.testing;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback TCP receiver for tests and benchmarks. It reads as fast as it can and counts bytes and
+ * line feeds.
+ *
+ * A sink made {@link #down()} stands for a receiver that is not running yet: it holds its port with a
+ * bound socket that does not listen, so connections are refused, and only gives it up once its
+ * server has taken the port over.
+ */
+public class TcpSink implements AutoCloseable {
+
+    private final EventLoopGroup group = new NioEventLoopGroup(1);
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private Channel server;
+    private Socket reservation;
+
+    public TcpSink() throws InterruptedException {
+        listen(0);
+    }
+
+    private TcpSink(Socket reservation) {
+        this.reservation = reservation;
+    }
+
+    /**
+     * A sink that refuses connections to its port until it is {@link #start() started}.
+     */
+    public static TcpSink down() throws IOException {
+        final Socket reservation = new Socket();
+        reservation.setReuseAddress(true);
+        reservation.bind(new InetSocketAddress("127.0.0.1", 0));
+        return new TcpSink(reservation);
+    }
+
+    /**
+     * Starts accepting connections on the port of a sink that is {@link #down()}.
+     */
+    public void start() throws IOException, InterruptedException {
+        listen(reservation.getLocalPort());
+        reservation.close();
+        reservation = null;
+    }
+
+    private void listen(int port) throws InterruptedException {
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new SimpleChannelInboundHandler<ByteBuf>() {
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                                count(msg);
+                            }
+                        });
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", port)).sync().channel();
+    }
+
+    private void count(ByteBuf msg) {
+        bytes.addAndGet(msg.readableBytes());
+        long count = 0;
+        for (int i = msg.readerIndex(); i < msg.writerIndex(); i++) {
+            if (msg.getByte(i) == '\n') {
+                count++;
+            }
+        }
+        lines.addAndGet(count);
+    }
+
+    public int getPort() {
+        return reservation != null ? reservation.getLocalPort() : ((InetSocketAddress) server.localAddress()).getPort();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getLines() {
+        return lines.get();
+    }
+
+    @Override
+    public void close() {
+        if (reservation != null) {
+            try {
+                reservation.close();
+            } catch (IOException e) {
+                // nothing listens on it
+            }
+        }
+        if (server != null) {
+            server.close().syncUninterruptibly();
+        }
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+}
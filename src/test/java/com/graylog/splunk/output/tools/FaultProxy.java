@@ -0,0 +1,546 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.tools;
+
+import com.graylog.splunk.output.senders.TokenBucket;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits between an output and its receiver and injects the faults that are hard to get on a test
+ * machine: latency, bandwidth caps, UDP loss and reordering, TCP resets, receiver outages and
+ * receivers that stop reading.
+ *
+ * Every interval it prints what it forwarded and which faults it injected. Together with sequence
+ * numbers and {@link LossReceiver} behind the proxy this shows the loss an output sees and how long
+ * its throughput takes to recover after a reset or a stall.
+ *
+ * <pre>java -cp target/classes:target/test-classes:&lt;dependencies&gt; com.graylog.splunk.output.tools.FaultProxy [options] udp|tcp &lt;listen port&gt; &lt;host:port&gt;</pre>
+ *
+ * Tests start it with {@link #start}, which takes the same options.
+ *
+ * Options:
+ * <ul>
+ * <li>{@code --latency <ms>}, {@code --jitter <ms>}: delay added to every datagram or read, jitter only reorders UDP</li>
+ * <li>{@code --bandwidth <bytes/s>}: rate cap, over TCP the proxy then reads only as fast as it forwards</li>
+ * <li>{@code --loss <ratio>}: UDP datagrams dropped</li>
+ * <li>{@code --seed <n>}: seed for loss, reordering and jitter, so a run can be repeated</li>
+ * <li>{@code --reorder <ratio>}, {@code --reorder-delay <ms>}: UDP datagrams held back so later ones overtake them</li>
+ * <li>{@code --reset-every <s>}, {@code --down-for <ms>}: TCP connections reset periodically, new ones refused for a while after</li>
+ * <li>{@code --stall-every <s>}, {@code --stall-for <ms>}: TCP reads paused periodically, so the sender's socket fills up</li>
+ * <li>{@code --interval <s>}: reporting interval, 10 by default</li>
+ * </ul>
+ * Replies from the receiver, such as {@link LossReceiver}'s loss reports, are passed back unchanged.
+ */
+public final class FaultProxy implements AutoCloseable {
+
+    private static final int HIGH_WATER_BYTES = 1024 * 1024;
+    private static final int LOW_WATER_BYTES = HIGH_WATER_BYTES / 2;
+    private static final int BANDWIDTH_BURST_MILLIS = 100;
+    private static final int MAX_DATAGRAM = 65536;
+    private static final int UDP_RECEIVE_BUFFER = 4 * 1024 * 1024;
+
+    private final EventLoopGroup group = new NioEventLoopGroup(1);
+    // Everything below is only touched on the single event loop.
+    private Random random = new Random();
+    private final Set<Frontend> connections = new HashSet<>();
+
+    private long latencyNanos;
+    private long jitterNanos;
+    private TokenBucket bandwidth;
+    private double lossRatio;
+    private double reorderRatio;
+    private long reorderNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    private long resetEverySeconds;
+    private long downNanos;
+    private long stallEverySeconds;
+    private long stallMillis = 1000;
+    private long intervalSeconds = 10;
+
+    private long downUntil = System.nanoTime();
+    private boolean stalled = false;
+
+    private long forwarded;
+    private long forwardedBytes;
+    private long lost;
+    private long reordered;
+    private long accepted;
+    private long resets;
+    private long refused;
+    private long stalls;
+
+    private Channel server;
+    // UDP only.
+    private volatile Channel listener;
+    private InetSocketAddress client;
+
+    private FaultProxy() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int arg = 0;
+        while (arg < args.length && args[arg].startsWith("--")) {
+            arg += 2;
+        }
+        if (arg > args.length || args.length - arg != 3) {
+            usage();
+        }
+        final int port = Integer.parseInt(args[arg + 1]);
+        final String target = args[arg + 2];
+        final int colon = target.lastIndexOf(':');
+        final InetSocketAddress targetAddress = new InetSocketAddress(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+
+        final FaultProxy proxy;
+        try {
+            proxy = start(args[arg], port, targetAddress, Arrays.copyOf(args, arg));
+        } catch (IllegalArgumentException e) {
+            usage();
+            return;
+        }
+        System.out.println("Forwarding " + args[arg].toUpperCase(Locale.ENGLISH) + " port " + port + " to " + targetAddress);
+        proxy.group.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                proxy.report();
+            }
+        }, proxy.intervalSeconds, proxy.intervalSeconds, TimeUnit.SECONDS);
+        proxy.group.terminationFuture().sync();
+    }
+
+    /**
+     * Starts forwarding.
+     *
+     * @param protocol {@code udp} or {@code tcp}
+     * @param port     port to listen on, 0 for any free one, see {@link #getPort()}
+     * @param options  the command line options, as name and value pairs
+     */
+    public static FaultProxy start(String protocol, int port, InetSocketAddress target, String... options)
+            throws InterruptedException {
+        final FaultProxy proxy = new FaultProxy();
+        if (options.length % 2 != 0) {
+            throw new IllegalArgumentException("Option without value");
+        }
+        for (int i = 0; i < options.length; i += 2) {
+            proxy.option(options[i], options[i + 1]);
+        }
+        if ("udp".equals(protocol)) {
+            proxy.runUdp(port, target);
+        } else if ("tcp".equals(protocol)) {
+            proxy.runTcp(port, target);
+        } else {
+            throw new IllegalArgumentException(protocol);
+        }
+        return proxy;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: FaultProxy [--latency ms] [--jitter ms] [--bandwidth bytes/s] [--loss ratio] [--seed n] "
+                + "[--reorder ratio] [--reorder-delay ms] [--reset-every s] [--down-for ms] [--stall-every s] "
+                + "[--stall-for ms] [--interval s] udp|tcp <listen port> <host:port>");
+        System.exit(2);
+    }
+
+    private void option(String name, String value) {
+        try {
+            parseOption(name, value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " " + value, e);
+        }
+    }
+
+    private void parseOption(String name, String value) {
+        switch (name) {
+            case "--latency":
+                latencyNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(value));
+                break;
+            case "--jitter":
+                jitterNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(value));
+                break;
+            case "--bandwidth":
+                bandwidth = new TokenBucket(0, Long.parseLong(value), BANDWIDTH_BURST_MILLIS, false);
+                break;
+            case "--loss":
+                lossRatio = Double.parseDouble(value);
+                break;
+            case "--seed":
+                random = new Random(Long.parseLong(value));
+                break;
+            case "--reorder":
+                reorderRatio = Double.parseDouble(value);
+                break;
+            case "--reorder-delay":
+                reorderNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(value));
+                break;
+            case "--reset-every":
+                resetEverySeconds = Long.parseLong(value);
+                break;
+            case "--down-for":
+                downNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(value));
+                break;
+            case "--stall-every":
+                stallEverySeconds = Long.parseLong(value);
+                break;
+            case "--stall-for":
+                stallMillis = Long.parseLong(value);
+                break;
+            case "--interval":
+                intervalSeconds = Math.max(1, Long.parseLong(value));
+                break;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    /**
+     * Delay for a datagram or read of the given size: latency, jitter and the wait for bandwidth.
+     */
+    private long delayNanos(int bytes, boolean jitter) {
+        long delay = latencyNanos;
+        if (jitter && jitterNanos > 0) {
+            delay += (long) (random.nextDouble() * jitterNanos);
+        }
+        if (bandwidth != null) {
+            delay += bandwidth.reserve(bytes);
+        }
+        return delay;
+    }
+
+    private void later(long delayNanos, Runnable task) {
+        if (delayNanos <= 0) {
+            task.run();
+        } else {
+            group.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void runUdp(int port, final InetSocketAddress target) throws InterruptedException {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .option(ChannelOption.SO_RCVBUF, UDP_RECEIVE_BUFFER)
+                // Datagrams are read whole, up to the largest one an output sends.
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(MAX_DATAGRAM));
+
+        // Replies from the receiver go back to the client that sent last.
+        final Channel upstream = bootstrap.clone().handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                if (client != null) {
+                    listener.writeAndFlush(new DatagramPacket(packet.content().retain(), client));
+                }
+            }
+        }).bind(0).sync().channel();
+
+        server = listener = bootstrap.clone().handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                client = packet.sender();
+                if (lossRatio > 0 && random.nextDouble() < lossRatio) {
+                    lost++;
+                    return;
+                }
+                final int bytes = packet.content().readableBytes();
+                long delay = delayNanos(bytes, true);
+                if (reorderRatio > 0 && random.nextDouble() < reorderRatio) {
+                    reordered++;
+                    delay += reorderNanos;
+                }
+                final DatagramPacket out = new DatagramPacket(packet.content().retain(), target);
+                later(delay, new Runnable() {
+                    @Override
+                    public void run() {
+                        forwarded++;
+                        forwardedBytes += bytes;
+                        upstream.writeAndFlush(out);
+                    }
+                });
+            }
+        }).bind(port).sync().channel();
+    }
+
+    private void runTcp(int port, final InetSocketAddress target) throws InterruptedException {
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new Frontend(target));
+                    }
+                })
+                .bind(port).sync().channel();
+
+        if (resetEverySeconds > 0) {
+            group.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    downUntil = System.nanoTime() + downNanos;
+                    for (Frontend connection : new ArrayList<>(connections)) {
+                        resets++;
+                        reset(connection.channel);
+                    }
+                }
+            }, resetEverySeconds, resetEverySeconds, TimeUnit.SECONDS);
+        }
+        if (stallEverySeconds > 0) {
+            group.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    stalls++;
+                    setStalled(true);
+                    group.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            setStalled(false);
+                        }
+                    }, stallMillis, TimeUnit.MILLISECONDS);
+                }
+            }, stallEverySeconds, stallEverySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void setStalled(boolean stalled) {
+        this.stalled = stalled;
+        for (Frontend connection : connections) {
+            connection.updateAutoRead();
+        }
+    }
+
+    /**
+     * Closes with an RST instead of a FIN, like a receiver that crashed.
+     */
+    private static void reset(Channel channel) {
+        channel.config().setOption(ChannelOption.SO_LINGER, 0);
+        channel.close();
+    }
+
+    /**
+     * The connection from the output. Its reads are delayed, in order, and paused while stalled or
+     * while too much is waiting for bandwidth.
+     */
+    private class Frontend extends ChannelInboundHandlerAdapter {
+        private final InetSocketAddress target;
+        private Channel channel;
+        private Channel backend;
+        private long lastDue;
+        private int backlog;
+
+        Frontend(InetSocketAddress target) {
+            this.target = target;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            channel = ctx.channel();
+            if (System.nanoTime() - downUntil < 0) {
+                refused++;
+                reset(channel);
+                return;
+            }
+            accepted++;
+            connections.add(this);
+            new Bootstrap()
+                    .group(channel.eventLoop())
+                    .channel(NioSocketChannel.class)
+                    .handler(new Backend(channel))
+                    .connect(target)
+                    .addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) {
+                            if (!future.isSuccess()) {
+                                channel.close();
+                            } else if (!channel.isActive()) {
+                                future.channel().close();
+                            } else {
+                                backend = future.channel();
+                                updateAutoRead();
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            final ByteBuf buf = (ByteBuf) msg;
+            final int bytes = buf.readableBytes();
+            backlog += bytes;
+            updateAutoRead();
+
+            // Never before an earlier read, the byte stream has to stay in order.
+            final long now = System.nanoTime();
+            final long due = Math.max(now + delayNanos(bytes, false), lastDue);
+            lastDue = due;
+            later(due - now, new Runnable() {
+                @Override
+                public void run() {
+                    backlog -= bytes;
+                    updateAutoRead();
+                    if (backend.isActive()) {
+                        forwarded++;
+                        forwardedBytes += bytes;
+                        backend.writeAndFlush(buf);
+                    } else {
+                        buf.release();
+                    }
+                }
+            });
+        }
+
+        void updateAutoRead() {
+            if (backend == null || !channel.isActive()) {
+                return;
+            }
+            if (stalled || backlog >= HIGH_WATER_BYTES) {
+                channel.config().setAutoRead(false);
+            } else if (backlog <= LOW_WATER_BYTES) {
+                channel.config().setAutoRead(true);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            connections.remove(this);
+            if (backend != null) {
+                backend.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+
+    /**
+     * The connection to the receiver, passes everything back unchanged.
+     */
+    private static class Backend extends ChannelInboundHandlerAdapter {
+        private final Channel frontend;
+
+        Backend(Channel frontend) {
+            this.frontend = frontend;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            frontend.writeAndFlush(msg);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            frontend.close();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) server.localAddress()).getPort();
+    }
+
+    /**
+     * @return UDP datagrams dropped so far, unless reported by {@link #main}
+     */
+    public long getLost() {
+        return onLoop(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return lost;
+            }
+        });
+    }
+
+    /**
+     * @return TCP connections reset so far, unless reported by {@link #main}
+     */
+    public long getResets() {
+        return onLoop(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return resets;
+            }
+        });
+    }
+
+    /**
+     * @return TCP read stalls so far, unless reported by {@link #main}
+     */
+    public long getStalls() {
+        return onLoop(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return stalls;
+            }
+        });
+    }
+
+    private <T> T onLoop(Callable<T> read) {
+        return group.submit(read).syncUninterruptibly().getNow();
+    }
+
+    @Override
+    public void close() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    private void report() {
+        System.out.println(String.format(Locale.ENGLISH,
+                "forwarded=%d rate=%.1f KiB/s lost=%d reordered=%d connections=%d accepted=%d resets=%d refused=%d stalls=%d%s",
+                forwarded, forwardedBytes / (double) intervalSeconds / 1024, lost, reordered, connections.size(),
+                accepted, resets, refused, stalls, stalled ? " stalled" : ""));
+        forwarded = 0;
+        forwardedBytes = 0;
+        lost = 0;
+        reordered = 0;
+        accepted = 0;
+        resets = 0;
+        refused = 0;
+        stalls = 0;
+    }
+}
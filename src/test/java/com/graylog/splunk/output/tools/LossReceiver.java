@@ -0,0 +1,368 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.graylog.splunk.output.tools;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the tlog server that measures what arrives from outputs with sequence numbers enabled.
+ *
+ * Every interval it prints, per sender, the received datagrams, gaps in the sequence, datagrams that
+ * arrived out of order and the throughput. With {@code --feedback} it also sends the loss ratio of the
+ * interval back as a {@code loss=<ratio>} datagram, which the adaptive UDP pacer reacts to.
+ *
+ * Every datagram carries its own sequence number, fragments included, so gaps count lost datagrams.
+ * Lines split by the {@code FRAGMENT} oversize policy are reassembled after that; fragments of a line
+ * that is still incomplete after {@value #FRAGMENT_TIMEOUT_SECONDS} seconds are discarded and counted.
+ *
+ * <pre>java -cp target/classes:target/test-classes:&lt;dependencies&gt; com.graylog.splunk.output.tools.LossReceiver [--feedback] &lt;port&gt; [interval seconds]</pre>
+ *
+ * Tests start it in the background with {@link #start} and read the totals instead of the report.
+ */
+public final class LossReceiver implements AutoCloseable {
+
+    private static final int MAX_DATAGRAM = 65536;
+    private static final long FRAGMENT_TIMEOUT_SECONDS = 30;
+    private static final byte[] FRAGMENT = "#frag:".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<String, SenderStats> senders = new LinkedHashMap<>();
+    private final Map<String, Fragments> fragments = new HashMap<>();
+    private long unsequenced = 0;
+    private long reassembled = 0;
+    private long incomplete = 0;
+    private long malformed = 0;
+    private volatile boolean running = true;
+    private DatagramSocket socket;
+
+    private LossReceiver() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean feedback = false;
+        int arg = 0;
+        if (args.length > 0 && "--feedback".equals(args[0])) {
+            feedback = true;
+            arg++;
+        }
+        if (args.length <= arg) {
+            System.err.println("Usage: LossReceiver [--feedback] <port> [interval seconds]");
+            System.exit(2);
+        }
+        final int port = Integer.parseInt(args[arg]);
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(args.length > arg + 1 ? Long.parseLong(args[arg + 1]) : 10);
+
+        final LossReceiver receiver = new LossReceiver();
+        receiver.open(new InetSocketAddress(port));
+        System.out.println("Listening on UDP port " + port);
+        receiver.run(intervalNanos, feedback);
+    }
+
+    /**
+     * Receives on a background thread without reporting.
+     *
+     * @param port port to listen on, 0 for any free one, see {@link #getPort()}
+     */
+    public static LossReceiver start(int port) throws IOException {
+        final LossReceiver receiver = new LossReceiver();
+        receiver.open(new InetSocketAddress("127.0.0.1", port));
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    receiver.run(Long.MAX_VALUE, false);
+                } catch (IOException e) {
+                    if (receiver.running) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "LossReceiver-" + receiver.getPort());
+        thread.setDaemon(true);
+        thread.start();
+        return receiver;
+    }
+
+    private void open(InetSocketAddress address) throws IOException {
+        socket = new DatagramSocket(address);
+        socket.setReceiveBufferSize(4 * 1024 * 1024);
+        socket.setSoTimeout(100);
+    }
+
+    private void run(long intervalNanos, boolean feedback) throws IOException {
+        try (DatagramSocket socket = this.socket) {
+            final DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM], MAX_DATAGRAM);
+            long intervalStart = System.nanoTime();
+            while (running) {
+                try {
+                    packet.setLength(MAX_DATAGRAM);
+                    socket.receive(packet);
+                    receive(packet);
+                } catch (SocketTimeoutException e) {
+                    // report even when nothing arrives
+                }
+
+                final long now = System.nanoTime();
+                if (now - intervalStart >= intervalNanos) {
+                    report((now - intervalStart) / 1e9, feedback ? socket : null);
+                    intervalStart = now;
+                }
+            }
+        }
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * @return sequenced datagrams received from all senders
+     */
+    public synchronized long getReceived() {
+        long received = 0;
+        for (SenderStats stats : senders.values()) {
+            received += stats.received;
+        }
+        return received;
+    }
+
+    /**
+     * @return gaps in the sequences of all senders that were not filled by late lines
+     */
+    public synchronized long getLost() {
+        long lost = 0;
+        for (SenderStats stats : senders.values()) {
+            lost += stats.lost;
+        }
+        return lost;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        socket.close();
+    }
+
+    private synchronized void receive(DatagramPacket packet) {
+        final int start = sequenced(packet.getData(), packet.getLength(), packet.getSocketAddress());
+        if (start >= 0 && startsWith(packet.getData(), start, packet.getLength(), FRAGMENT)) {
+            reassemble(packet.getData(), start, packet.getLength(), packet.getSocketAddress());
+        }
+    }
+
+    /**
+     * Counts the sequence number of a {@code #<sender id>:<sequence> <datagram>} datagram.
+     *
+     * @return where the datagram starts after the sequence number, or -1 if it has none
+     */
+    private int sequenced(byte[] data, int length, SocketAddress from) {
+        final int colon = indexOf(data, 0, length, (byte) ':');
+        final int space = indexOf(data, 0, length, (byte) ' ');
+        if (length == 0 || data[0] != '#' || colon < 0 || space < colon) {
+            unsequenced++;
+            return -1;
+        }
+        final long sequence;
+        try {
+            sequence = Long.parseLong(new String(data, colon + 1, space - colon - 1, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            unsequenced++;
+            return -1;
+        }
+
+        final String senderId = new String(data, 1, colon - 1, StandardCharsets.US_ASCII);
+        SenderStats stats = senders.get(senderId);
+        if (stats == null) {
+            stats = new SenderStats();
+            senders.put(senderId, stats);
+        }
+        stats.receive(sequence, length, from);
+        return space + 1;
+    }
+
+    /**
+     * Collects one {@code #frag:<id>:<index>/<count> <part>} datagram and counts the line once all parts are there.
+     */
+    private void reassemble(byte[] data, int start, int length, SocketAddress from) {
+        final int idEnd = indexOf(data, start + FRAGMENT.length, length, (byte) ':');
+        final int slash = indexOf(data, idEnd + 1, length, (byte) '/');
+        final int space = indexOf(data, slash + 1, length, (byte) ' ');
+        if (idEnd < 0 || slash < 0 || space < 0) {
+            malformed++;
+            return;
+        }
+        final int index;
+        final int count;
+        try {
+            index = Integer.parseInt(new String(data, idEnd + 1, slash - idEnd - 1, StandardCharsets.US_ASCII));
+            count = Integer.parseInt(new String(data, slash + 1, space - slash - 1, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            malformed++;
+            return;
+        }
+        if (count <= 0 || index < 0 || index >= count) {
+            malformed++;
+            return;
+        }
+
+        final String key = from + "/" + new String(data, start + FRAGMENT.length, idEnd - start - FRAGMENT.length, StandardCharsets.US_ASCII);
+        Fragments line = fragments.get(key);
+        if (line == null) {
+            line = new Fragments(count);
+            fragments.put(key, line);
+        }
+        if (line.parts.length != count || line.parts[index]) {
+            return;
+        }
+        line.parts[index] = true;
+        if (++line.received == count) {
+            fragments.remove(key);
+            reassembled++;
+        }
+    }
+
+    private synchronized void report(double seconds, DatagramSocket feedback) throws IOException {
+        for (Map.Entry<String, SenderStats> entry : senders.entrySet()) {
+            final SenderStats stats = entry.getValue();
+            final double loss = stats.intervalLoss();
+            System.out.println(String.format(Locale.ENGLISH,
+                    "sender=%s received=%d lost=%d reordered=%d interval_loss=%.4f rate=%.1f msg/s %.1f KiB/s total_received=%d total_lost=%d",
+                    entry.getKey(), stats.intervalReceived, stats.intervalLost, stats.intervalReordered, loss,
+                    stats.intervalReceived / seconds, stats.intervalBytes / seconds / 1024,
+                    stats.received, stats.lost));
+
+            if (feedback != null && stats.address != null && stats.intervalReceived > 0) {
+                final byte[] report = String.format(Locale.ENGLISH, "loss=%.6f", loss).getBytes(StandardCharsets.US_ASCII);
+                feedback.send(new DatagramPacket(report, report.length, stats.address));
+            }
+            stats.resetInterval();
+        }
+        if (unsequenced > 0) {
+            System.out.println("unsequenced=" + unsequenced);
+            unsequenced = 0;
+        }
+
+        final long expired = System.nanoTime() - TimeUnit.SECONDS.toNanos(FRAGMENT_TIMEOUT_SECONDS);
+        final Iterator<Fragments> it = fragments.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().firstSeen - expired < 0) {
+                it.remove();
+                incomplete++;
+            }
+        }
+        if (reassembled > 0 || incomplete > 0 || malformed > 0) {
+            System.out.println("reassembled=" + reassembled + " incomplete=" + incomplete + " malformed=" + malformed
+                    + " pending=" + fragments.size());
+            reassembled = 0;
+            incomplete = 0;
+            malformed = 0;
+        }
+    }
+
+    private static boolean startsWith(byte[] data, int start, int length, byte[] prefix) {
+        if (length - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] data, int from, int length, byte b) {
+        if (from < 0) {
+            return -1;
+        }
+        for (int i = from; i < length; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Fragments {
+        private final boolean[] parts;
+        private final long firstSeen = System.nanoTime();
+        private int received;
+
+        Fragments(int count) {
+            this.parts = new boolean[count];
+        }
+    }
+
+    private static class SenderStats {
+        private long highest = -1;
+        private long received;
+        private long lost;
+        private SocketAddress address;
+
+        private long intervalReceived;
+        private long intervalLost;
+        private long intervalReordered;
+        private long intervalBytes;
+
+        void receive(long sequence, int bytes, SocketAddress from) {
+            address = from;
+            received++;
+            intervalReceived++;
+            intervalBytes += bytes;
+
+            if (highest < 0 || sequence == highest + 1) {
+                highest = sequence;
+            } else if (sequence > highest) {
+                // Counted as lost until they turn up late.
+                final long gap = sequence - highest - 1;
+                lost += gap;
+                intervalLost += gap;
+                highest = sequence;
+            } else {
+                // A late datagram fills a gap counted before. Duplicates are counted here as well.
+                intervalReordered++;
+                if (lost > 0) {
+                    lost--;
+                    intervalLost--;
+                }
+            }
+        }
+
+        double intervalLoss() {
+            final long expected = intervalReceived + intervalLost;
+            return expected <= 0 ? 0.0 : Math.max(0, intervalLost) / (double) expected;
+        }
+
+        void resetInterval() {
+            intervalReceived = 0;
+            intervalLost = 0;
+            intervalReordered = 0;
+            intervalBytes = 0;
+        }
+    }
+}